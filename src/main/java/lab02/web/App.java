@@ -6,6 +6,6 @@ import lab02.web.server.core.MicroSpringBoot;
 @MicroSpringbootApp
 public class App {
     public static void main(String[] args) {
-        MicroSpringBoot.run(App.class, 8080);
+        MicroSpringBoot.run(App.class, Integer.getInteger("msb.port", 8080));
     }
 }
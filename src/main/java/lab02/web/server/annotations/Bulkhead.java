@@ -0,0 +1,33 @@
+package lab02.web.server.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caps how many requests a route (on a method) or a whole controller (on the
+ * class, shared by all its routes) runs at once. Requests beyond
+ * {@link #maxConcurrent()} wait in a queue of at most {@link #maxQueue()} for
+ * up to {@link #queueTimeoutMillis()}; anything else gets 503 right away.
+ * Each bulkhead runs its requests on its own threads, so a slow route never
+ * holds the server's accept loops.
+ * With {@link #adaptive()} the limit moves between 1 and
+ * {@link #maxConcurrent()}. It shrinks when recent latency exceeds the route's
+ * long-run average by more than {@link #latencyTolerance()} times, or the
+ * handler fails, and grows again otherwise.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Bulkhead {
+    /** Threads and concurrent handlers; 0 means half the server's accept loops, at least 1. */
+    int maxConcurrent() default 0;
+
+    int maxQueue() default 0;
+
+    long queueTimeoutMillis() default 1000;
+
+    boolean adaptive() default false;
+
+    double latencyTolerance() default 2.0;
+}
@@ -0,0 +1,18 @@
+package lab02.web.server.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code Filter} implementation to be registered at startup for the
+ * given path patterns. Lower {@link #order()} runs first (outermost).
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Interceptor {
+    String[] value() default "/**";
+
+    int order() default 0;
+}
@@ -0,0 +1,283 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.HttpMethod;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Executes a JSON array of sub-requests through the server's own route table
+ * and answers with one JSON array holding each item's status, headers and body.
+ *
+ * <pre>
+ * [{"method": "GET", "path": "/hello", "query": {"name": "Ana"}},
+ *  {"method": "POST", "path": "/items", "body": {"id": 1}}]
+ * </pre>
+ *
+ * Items run in parallel on a pool capped at {@code maxConcurrency} threads.
+ * Each item gets {@code itemTimeoutMillis} to run, measured from when a worker
+ * picks it up (504 past that), and as long again to wait for a worker (503 past
+ * that). A batch holds at most {@code maxItems} items (400 above). The pool's
+ * queue holds {@code 4 * maxItems} items across all batches; items that find
+ * it full get 503.
+ */
+public class BatchHandler implements Handler {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int QUEUED_BATCHES = 4;
+
+    private final WebServer server;
+    private final String batchPath;
+    private final ThreadPoolExecutor executor;
+    private final long itemTimeoutNanos;
+    private final int maxItems;
+
+    public BatchHandler(WebServer server, String batchPath, int maxConcurrency, long itemTimeoutMillis,
+            int maxItems) {
+        int threads = Math.max(1, maxConcurrency);
+        this.server = server;
+        this.batchPath = batchPath;
+        this.itemTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(itemTimeoutMillis);
+        this.maxItems = Math.max(1, maxItems);
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.maxItems * QUEUED_BATCHES), daemonThreads());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void handle(Request req, Response res) throws Exception {
+        JsonNode items;
+        try {
+            items = MAPPER.readTree(req.getRawBody());
+        } catch (Exception e) {
+            items = null;
+        }
+        if (items == null || !items.isArray()) {
+            res.setStatusCode(400);
+            res.setStatusMessage("Bad Request");
+            res.setBody("Batch body must be a JSON array of requests");
+            return;
+        }
+
+        if (items.size() > maxItems) {
+            res.setStatusCode(400);
+            res.setStatusMessage("Bad Request");
+            res.setBody("Batch holds at most " + maxItems + " requests");
+            return;
+        }
+
+        List<Item> pending = new ArrayList<>();
+        for (JsonNode node : items) {
+            Item item = new Item();
+            pending.add(item);
+            Request sub;
+            try {
+                sub = toRequest(node, req);
+            } catch (IllegalArgumentException e) {
+                item.result.complete(error(400, "Bad Request", e.getMessage()));
+                continue;
+            }
+            try {
+                item.task = executor.submit(() -> run(item, sub));
+            } catch (RejectedExecutionException e) {
+                item.result.complete(error(503, "Service Unavailable", "Batch queue full"));
+            }
+        }
+
+        ArrayNode out = MAPPER.createArrayNode();
+        for (Item item : pending) {
+            out.add(toJson(await(item)));
+        }
+
+        res.setStatusCode(200);
+        res.setHeader("Content-Type", "application/json");
+        res.setBody(MAPPER.writeValueAsBytes(out));
+    }
+
+    private Request toRequest(JsonNode item, Request parent) {
+        if (item == null || !item.isObject())
+            throw new IllegalArgumentException("Batch item must be an object");
+
+        HttpMethod method;
+        try {
+            method = HttpMethod.valueOf(item.path("method").asText("GET").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported method " + item.path("method").asText());
+        }
+        String path = item.path("path").asText("/");
+        if (path.isEmpty() || path.charAt(0) != '/')
+            throw new IllegalArgumentException("Invalid path " + path);
+        int q = path.indexOf('?');
+        String pathOnly = q >= 0 ? path.substring(0, q) : path;
+        if (pathOnly.equals(batchPath) || pathOnly.equals(batchPath + "/"))
+            throw new IllegalArgumentException("Nested batch requests are not allowed");
+
+        HashMap<String, String> params = Request.parseQueryParams(path);
+        JsonNode query = item.get("query");
+        if (query != null && query.isObject()) {
+            StringBuilder qs = new StringBuilder(q >= 0 ? path.substring(q + 1) : "");
+            for (Iterator<Map.Entry<String, JsonNode>> it = query.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> e = it.next();
+                String value = e.getValue().asText();
+                params.put(e.getKey(), value);
+                if (qs.length() > 0)
+                    qs.append('&');
+                qs.append(URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8)).append('=')
+                        .append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+            path = pathOnly + (qs.length() > 0 ? "?" + qs : "");
+        }
+
+        HashMap<String, String> headers = new HashMap<>(parent.getHeaders());
+        headers.keySet().removeIf(k -> k.equalsIgnoreCase("Content-Length"));
+
+        HashMap<String, ?> body = new HashMap<>();
+        String rawBody = "";
+        JsonNode bodyNode = item.get("body");
+        if (bodyNode != null && !bodyNode.isNull()) {
+            rawBody = bodyNode.isTextual() ? bodyNode.asText() : bodyNode.toString();
+            if (bodyNode.isObject())
+                body = MAPPER.convertValue(bodyNode, new TypeReference<HashMap<String, ?>>() {
+                });
+        }
+
+        return new Request(method, path, parent.getVersion(), params, headers, body, rawBody);
+    }
+
+    private void run(Item item, Request sub) {
+        item.startedAt = System.nanoTime();
+        try {
+            Response r = server.handleRequest(sub);
+            // Nobody reads an abandoned item's body, so close it here or a proxied upstream stays in flight
+            if (!item.result.complete(r))
+                closeBody(r);
+        } catch (Throwable t) {
+            item.result.completeExceptionally(t);
+        }
+    }
+
+    private Response await(Item item) {
+        while (true) {
+            long started = item.startedAt;
+            long deadline = (started != 0 ? started : item.queuedAt) + itemTimeoutNanos;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return started != 0 ? abandon(item, error(504, "Gateway Timeout", "Batch item timed out"))
+                        : abandon(item, error(503, "Service Unavailable", "Batch item did not start in time"));
+            }
+            try {
+                return item.result.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Re-check: the item may have started while waiting, which moves its deadline
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return abandon(item, error(503, "Service Unavailable", "Batch interrupted"));
+            } catch (ExecutionException e) {
+                return error(500, "Internal Server Error", "Handler error");
+            }
+        }
+    }
+
+    // Gives up on an item unless it completed in the meantime, in which case its result is used
+    private static Response abandon(Item item, Response fallback) {
+        if (item.result.cancel(false)) {
+            if (item.task != null)
+                item.task.cancel(true);
+            return fallback;
+        }
+        try {
+            return item.result.join();
+        } catch (RuntimeException e) {
+            return error(500, "Internal Server Error", "Handler error");
+        }
+    }
+
+    private static Response error(int status, String message, String body) {
+        Response r = new Response();
+        r.setStatusCode(status);
+        r.setStatusMessage(message);
+        r.setBody(body);
+        return r;
+    }
+
+    private static ObjectNode toJson(Response sub) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("status", sub.getStatusCode());
+        ObjectNode headers = node.putObject("headers");
+        for (Map.Entry<String, String> h : sub.getHeaders().entrySet()) {
+            headers.put(h.getKey(), h.getValue());
+        }
+        String type = sub.getHeaders().getOrDefault("Content-Type", "");
+        String text = new String(bodyOf(sub), StandardCharsets.UTF_8);
+        if (type.startsWith("application/json")) {
+            try {
+                node.set("body", MAPPER.readTree(text));
+                return node;
+            } catch (Exception ignored) {
+            }
+        }
+        node.put("body", text);
+        return node;
+    }
+
+    private static byte[] bodyOf(Response sub) {
+        InputStream stream = sub.getBodyStream();
+        if (stream == null)
+            return sub.getBody();
+        try (stream) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private static void closeBody(Response sub) {
+        InputStream stream = sub.getBodyStream();
+        if (stream == null)
+            return;
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Item {
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+        private volatile long startedAt;
+        private volatile Future<?> task;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "web-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,209 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.Response;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulkhead for one route or a group of routes: at most {@code limit} handlers
+ * run at once, up to {@code maxQueue} more wait for a slot, and the rest are
+ * answered with 503 immediately so a slow route cannot take every worker.
+ * Requests the server routes here run on the bulkhead's own pool of
+ * {@code maxConcurrent} threads and wait in its queue, so the accept loops go
+ * straight back to other connections. {@link #wrap(Handler)} applies the same
+ * limit to callers that are already off the loops, such as batch items.
+ *
+ * In adaptive mode the limit follows AIMD against the route's own latency
+ * rather than a fixed target: the route is overloaded when the recent average
+ * latency exceeds {@code tolerance} times the long-run average, or a call
+ * fails with a 5xx. Overload cuts the limit by 10%, at most once per round
+ * trip (only calls that started after the previous cut can cut again).
+ * Otherwise each call raises it by {@code 1/limit}, i.e. roughly one slot per
+ * window of calls.
+ */
+public class ConcurrencyLimiter {
+    private static final double DECREASE_FACTOR = 0.9;
+    private static final double RECENT_WEIGHT = 0.1;
+    private static final double BASELINE_WEIGHT = 0.01;
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final ThreadPoolExecutor executor;
+    private double tolerance;
+    private boolean adaptive;
+    private double limit;
+    private double recentNanos;
+    private double baselineNanos;
+    private long lastDecreaseNanos;
+    private int inFlight;
+    private int waiting;
+
+    public ConcurrencyLimiter(int maxConcurrent, int maxQueue, long queueTimeoutMillis) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMillis));
+        this.limit = this.maxConcurrent;
+        this.lastDecreaseNanos = System.nanoTime();
+        BlockingQueue<Runnable> queue = this.maxQueue == 0 ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(this.maxQueue);
+        this.executor = new ThreadPoolExecutor(this.maxConcurrent, this.maxConcurrent, 30, TimeUnit.SECONDS, queue,
+                daemonThreads());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Enables the AIMD limit. {@code tolerance} is how much slower than its
+     * long-run average the route may get before the limit shrinks, e.g. 2.0.
+     */
+    public ConcurrencyLimiter adaptive(double tolerance) {
+        lock.lock();
+        try {
+            this.adaptive = true;
+            this.tolerance = Math.max(1.0, tolerance);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code task} on the bulkhead's threads. {@code rejected} runs
+     * instead when the pool and its queue are full (on the calling thread),
+     * or when the task waited in the queue longer than the queue timeout.
+     */
+    void dispatch(Runnable task, Runnable rejected) {
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                if (maxQueue > 0 && System.nanoTime() - queuedAt > queueTimeoutNanos)
+                    rejected.run();
+                else
+                    task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.run();
+        }
+    }
+
+    public Handler wrap(Handler next) {
+        return (req, res) -> {
+            if (!acquire()) {
+                reject(res);
+                return;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                next.handle(req, res);
+                failed = res.getStatusCode() >= 500;
+            } finally {
+                release(start, System.nanoTime(), failed);
+            }
+        };
+    }
+
+    private boolean acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (waiting >= maxQueue)
+                return false;
+            waiting++;
+            try {
+                long nanos = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (nanos <= 0)
+                        return false;
+                    nanos = released.awaitNanos(nanos);
+                }
+                inFlight++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long startNanos, long endNanos, boolean failed) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (adaptive) {
+                int before = (int) limit;
+                double latency = endNanos - startNanos;
+                if (baselineNanos == 0) {
+                    recentNanos = latency;
+                    baselineNanos = latency;
+                } else {
+                    recentNanos += (latency - recentNanos) * RECENT_WEIGHT;
+                    baselineNanos += (latency - baselineNanos) * BASELINE_WEIGHT;
+                }
+                if (failed || recentNanos > baselineNanos * tolerance) {
+                    // Calls already in flight at the last cut reflect the old limit, so they do not cut again
+                    if (startNanos - lastDecreaseNanos >= 0) {
+                        limit = Math.max(1, limit * DECREASE_FACTOR);
+                        lastDecreaseNanos = endNanos;
+                    }
+                } else {
+                    limit = Math.min(maxConcurrent, limit + 1.0 / limit);
+                }
+                if ((int) limit > before)
+                    released.signal();
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static Response rejection() {
+        Response res = new Response();
+        reject(res);
+        return res;
+    }
+
+    private static void reject(Response res) {
+        res.setStatusCode(503);
+        res.setStatusMessage("Service Unavailable");
+        res.setHeader("Retry-After", "1");
+        res.setBody("Too many concurrent requests");
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "web-bulkhead-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
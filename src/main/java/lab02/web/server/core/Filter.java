@@ -0,0 +1,13 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+/**
+ * Runs around a route handler. Call {@code next.handle(req, res)} to continue
+ * the chain, or return without calling it to short-circuit the request.
+ */
+@FunctionalInterface
+public interface Filter {
+    void filter(Request req, Response res, Handler next) throws Exception;
+}
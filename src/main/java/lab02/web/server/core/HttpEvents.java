@@ -0,0 +1,120 @@
+package lab02.web.server.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events for the phases of a request. They are only filled in
+ * and committed when a recording has them enabled, so with the recorder off
+ * the cost is a begin/end pair per phase.
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=filename=web.jfr,settings=profile -jar app.jar
+ * jfr print --events lab02.http.Request web.jfr
+ * </pre>
+ */
+public final class HttpEvents {
+
+    private HttpEvents() {
+    }
+
+    @Name("lab02.http.Request")
+    @Label("HTTP Request")
+    @Description("Whole request, from the first byte read to the last byte written")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class RequestEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Path")
+        String path;
+        @Label("Status")
+        int status;
+        @Label("Response Bytes")
+        @Description("Status line, headers and body")
+        @DataAmount
+        long responseBytes;
+        @Label("Trace Id")
+        String traceId;
+    }
+
+    @Name("lab02.http.Parse")
+    @Label("HTTP Parse")
+    @Description("Reading and parsing the request line, headers and body")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class ParseEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Path")
+        String path;
+        @Label("Body Bytes")
+        @DataAmount
+        long bodyBytes;
+        @Label("Trace Id")
+        String traceId;
+    }
+
+    @Name("lab02.http.Route")
+    @Label("HTTP Route Lookup")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class RouteEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Path")
+        String path;
+        @Label("Matched")
+        boolean matched;
+        @Label("Trace Id")
+        String traceId;
+    }
+
+    @Name("lab02.http.Dispatch")
+    @Label("Controller Argument Binding")
+    @Description("Resolving controller method arguments before the reflective call")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class DispatchEvent extends Event {
+        @Label("Route")
+        String route;
+        @Label("Trace Id")
+        String traceId;
+    }
+
+    @Name("lab02.http.Handler")
+    @Label("Controller Method")
+    @Description("Reflective call into the controller method, including its body")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class HandlerEvent extends Event {
+        @Label("Route")
+        String route;
+        @Label("Status")
+        int status;
+        @Label("Trace Id")
+        String traceId;
+    }
+
+    @Name("lab02.http.Write")
+    @Label("HTTP Write")
+    @Category({ "MicroSpringBoot", "HTTP" })
+    @StackTrace(false)
+    static final class WriteEvent extends Event {
+        @Label("Path")
+        String path;
+        @Label("Status")
+        int status;
+        @Label("Bytes Written")
+        @Description("Status line, headers and body")
+        @DataAmount
+        long bytes;
+        @Label("Trace Id")
+        String traceId;
+    }
+}
@@ -6,18 +6,32 @@ import lab02.web.server.http.Request;
 import lab02.web.server.http.Response;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 public class MicroSpringBoot {
 
     public static void run(Class<?> appClass, int port) {
+        StartupReport report = new StartupReport();
+        configure(appClass, port, report).startupReport(report).start();
+    }
+
+    /** Scans the app's package and registers its interceptors and controllers, without starting. */
+    static WebServer configure(Class<?> appClass, int port, StartupReport report) {
         String basePackage = appClass.getPackage().getName();
         String basePath = basePackage.replace('.', '/');
 
@@ -25,53 +39,81 @@ public class MicroSpringBoot {
         URL url = cl.getResource(basePath);
         if (url == null) {
             System.out.println("[msb] base package not found: " + basePackage);
-            WebServer ws = new WebServer(port, "src/main/resources/static");
-            ws.start();
-            return;
+            return new WebServer(port, WebServer.DEFAULT_STATIC_ROOT);
         }
 
-        File root;
+        List<String> classNames;
         try {
-            String dec = URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8);
-            root = new File(dec);
+            classNames = "jar".equals(url.getProtocol()) ? listJarClassNames(url, basePath)
+                    : listDirClassNames(url, basePackage);
         } catch (Exception e) {
             System.out.println("[msb] failed to resolve base path: " + e.getMessage());
-            WebServer ws = new WebServer(port, "src/main/resources/static");
-            ws.start();
-            return;
+            return new WebServer(port, WebServer.DEFAULT_STATIC_ROOT);
         }
+        report.phase("scan");
 
         List<Class<?>> controllers = new ArrayList<>();
-        for (File f : listClassFiles(root)) {
-            String className = toClassName(basePackage, root, f);
-            if (className == null || className.contains("$"))
-                continue;
+        List<Class<?>> interceptors = new ArrayList<>();
+        for (String className : classNames) {
             try {
                 Class<?> c = Class.forName(className);
                 if (c.isAnnotationPresent(RestController.class)) {
                     controllers.add(c);
                 }
+                if (c.isAnnotationPresent(Interceptor.class) && Filter.class.isAssignableFrom(c)) {
+                    interceptors.add(c);
+                }
             } catch (Throwable ignored) {
             }
         }
+        report.phase("class_load");
+
+        interceptors.sort(Comparator.comparingInt(c -> c.getAnnotation(Interceptor.class).order()));
+        Map<Class<?>, Object> instances = new LinkedHashMap<>();
+        for (Class<?> c : interceptors) {
+            instances.put(c, instantiate(c));
+        }
+        for (Class<?> c : controllers) {
+            instances.put(c, instantiate(c));
+        }
+        report.phase("instantiate");
 
-        WebServer ws = new WebServer(port, "src/main/resources/static");
+        WebServer ws = new WebServer(port, WebServer.DEFAULT_STATIC_ROOT);
+        report.phase("server_init");
+
+        for (Class<?> ic : interceptors) {
+            Object instance = instances.get(ic);
+            if (instance == null)
+                continue;
+            for (String pattern : ic.getAnnotation(Interceptor.class).value()) {
+                ws.filter(pattern, (Filter) instance);
+                System.out.println("[msb] filter: " + pattern + " -> " + ic.getSimpleName());
+            }
+        }
 
         for (Class<?> ctrl : controllers) {
-            Object instance = instantiate(ctrl);
+            Object instance = instances.get(ctrl);
+            // A class-level bulkhead is shared by every route of the controller
+            ConcurrencyLimiter shared = limiterFor(ctrl.getAnnotation(Bulkhead.class), ws);
             for (Method m : ctrl.getDeclaredMethods()) {
                 Route route = routeFromMethod(m);
                 if (route == null)
                     continue;
                 String normPath = normalizePath(route.path);
                 Handler h = (req, res) -> invokeHandler(instance, m, req, res);
-                ws.register(route.method, normPath, h);
+                ConcurrencyLimiter limiter = m.isAnnotationPresent(Bulkhead.class)
+                        ? limiterFor(m.getAnnotation(Bulkhead.class), ws)
+                        : shared;
+                if (limiter != null)
+                    ws.register(route.method, normPath, h, limiter);
+                else
+                    ws.register(route.method, normPath, h);
                 System.out.println("[msb] route: " + route.method + " " + normPath + " -> " + ctrl.getSimpleName() + "."
-                        + m.getName());
+                        + m.getName() + (limiter != null ? " (bulkhead limit=" + limiter.limit() + ")" : ""));
             }
         }
-
-        ws.start();
+        report.phase("routes");
+        return ws;
     }
 
     private static record Route(HttpMethod method, String path) {
@@ -96,6 +138,15 @@ public class MicroSpringBoot {
         return null;
     }
 
+    private static ConcurrencyLimiter limiterFor(Bulkhead b, WebServer ws) {
+        if (b == null)
+            return null;
+        // By default one route may run as many handlers at once as half the accept loops
+        int max = b.maxConcurrent() > 0 ? b.maxConcurrent() : Math.max(1, ws.getAcceptors() / 2);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(max, b.maxQueue(), b.queueTimeoutMillis());
+        return b.adaptive() ? limiter.adaptive(b.latencyTolerance()) : limiter;
+    }
+
     private static String normalizePath(String p) {
         if (p == null || p.isEmpty())
             return "/";
@@ -116,15 +167,31 @@ public class MicroSpringBoot {
 
     private static void invokeHandler(Object instance, Method m, Request req, Response res) {
         try {
+            HttpEvents.DispatchEvent dispatch = new HttpEvents.DispatchEvent();
+            dispatch.begin();
             Object[] args = resolveArgs(m, req, res);
             m.setAccessible(true);
             Object target = java.lang.reflect.Modifier.isStatic(m.getModifiers()) ? null : instance;
+            if (dispatch.shouldCommit()) {
+                dispatch.route = routeName(m);
+                dispatch.traceId = req.getTraceId();
+                dispatch.commit();
+            }
+
+            HttpEvents.HandlerEvent call = new HttpEvents.HandlerEvent();
+            call.begin();
             Object result = m.invoke(target, args);
             if (result instanceof String s) {
                 res.setStatusCode(200);
                 res.setHeader("Content-Type", "text/plain; charset=utf-8");
                 res.setBody(s);
             }
+            if (call.shouldCommit()) {
+                call.route = routeName(m);
+                call.status = res.getStatusCode();
+                call.traceId = req.getTraceId();
+                call.commit();
+            }
         } catch (BadRequest br) {
             res.setStatusCode(400);
             res.setStatusMessage("Bad Request");
@@ -136,6 +203,10 @@ public class MicroSpringBoot {
         }
     }
 
+    private static String routeName(Method m) {
+        return m.getDeclaringClass().getSimpleName() + "." + m.getName();
+    }
+
     private static Object[] resolveArgs(Method m, Request req, Response res) {
         Parameter[] params = m.getParameters();
         Object[] args = new Object[params.length];
@@ -181,6 +252,35 @@ public class MicroSpringBoot {
         return null;
     }
 
+    private static List<String> listDirClassNames(URL url, String basePackage) {
+        File root = new File(URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8));
+        List<String> out = new ArrayList<>();
+        for (File f : listClassFiles(root)) {
+            String className = toClassName(basePackage, root, f);
+            if (className == null || className.contains("$"))
+                continue;
+            out.add(className);
+        }
+        return out;
+    }
+
+    // Packaged runs: the base package resolves to jar:file:/app.jar!/base/path
+    private static List<String> listJarClassNames(URL url, String basePath) throws IOException {
+        JarURLConnection conn = (JarURLConnection) url.openConnection();
+        conn.setUseCaches(false);
+        List<String> out = new ArrayList<>();
+        try (JarFile jar = conn.getJarFile()) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.startsWith(basePath + "/") || !name.endsWith(".class") || name.contains("$"))
+                    continue;
+                out.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+            }
+        }
+        return out;
+    }
+
     private static List<File> listClassFiles(File dir) {
         List<File> out = new ArrayList<>();
         File[] files = dir.listFiles();
@@ -0,0 +1,44 @@
+package lab02.web.server.core;
+
+/**
+ * Path patterns used to select filters: an exact path, {@code /api/*} for a
+ * single segment below {@code /api}, or {@code /api/**} for {@code /api} and
+ * everything below it. Only evaluated when the route table is compiled.
+ */
+final class PathPattern {
+    private final String pattern;
+
+    PathPattern(String pattern) {
+        this.pattern = normalize(pattern);
+    }
+
+    // Same shape as route paths: leading slash, no trailing slash ("api/" -> "/api")
+    private static String normalize(String p) {
+        if (p == null || p.isEmpty() || p.equals("*"))
+            return "/**";
+        String out = p.startsWith("/") ? p : "/" + p;
+        if (out.length() > 1 && out.endsWith("/"))
+            out = out.substring(0, out.length() - 1);
+        return out;
+    }
+
+    boolean matches(String path) {
+        if (pattern.equals("/**"))
+            return true;
+        if (pattern.endsWith("/**")) {
+            String base = pattern.substring(0, pattern.length() - 3);
+            return path.equals(base) || path.startsWith(base + "/");
+        }
+        if (pattern.endsWith("/*")) {
+            String base = pattern.substring(0, pattern.length() - 1);
+            return path.startsWith(base) && path.length() > base.length()
+                    && path.indexOf('/', base.length()) < 0;
+        }
+        return path.equals(pattern);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,266 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwards requests to a pool of upstream servers. Mount it on a prefix:
+ *
+ * <pre>
+ * ws.mount("/api", new ProxyHandler("http://localhost:8081", "http://localhost:8082")
+ *         .balancing(ProxyHandler.Balancing.LEAST_IN_FLIGHT));
+ * </pre>
+ *
+ * The request path and query are forwarded unchanged. Upstream connections
+ * are kept alive and pooled by {@link HttpClient}, and the upstream body is
+ * streamed to the client as it arrives. An upstream that fails
+ * {@code maxFailures} times in a row (connection error, timeout or 502/503/504)
+ * is ejected for {@code ejectMillis} before it receives traffic again.
+ */
+public class ProxyHandler implements Handler {
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT
+    }
+
+    // Hop-by-hop headers, plus the ones HttpClient sets itself and refuses to take
+    private static final Set<String> SKIPPED_HEADERS = Set.of("connection", "keep-alive", "proxy-connection",
+            "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade", "host",
+            "content-length", "expect");
+
+    private final List<Upstream> upstreams;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final HttpClient client;
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    private Duration timeout = Duration.ofSeconds(30);
+    private int maxFailures = 3;
+    private long ejectMillis = 10_000;
+
+    public ProxyHandler(String... upstreamBaseUrls) {
+        if (upstreamBaseUrls.length == 0)
+            throw new IllegalArgumentException("At least one upstream is required");
+        this.upstreams = new ArrayList<>();
+        for (String base : upstreamBaseUrls) {
+            String b = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+            upstreams.add(new Upstream(b));
+        }
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    public ProxyHandler balancing(Balancing balancing) {
+        this.balancing = balancing;
+        return this;
+    }
+
+    public ProxyHandler timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public ProxyHandler ejection(int maxFailures, long ejectMillis) {
+        this.maxFailures = Math.max(1, maxFailures);
+        this.ejectMillis = ejectMillis;
+        return this;
+    }
+
+    @Override
+    public void handle(Request req, Response res) throws Exception {
+        // Connection failures never reached the upstream, so they are retried on the next one
+        for (int attempt = 0; attempt < upstreams.size(); attempt++) {
+            Upstream u = choose();
+            if (u == null)
+                break;
+            HttpRequest upstreamReq;
+            try {
+                upstreamReq = toUpstreamRequest(u, req);
+            } catch (IllegalArgumentException e) {
+                error(res, 400, "Bad Request", "Invalid request target");
+                return;
+            }
+
+            u.inFlight.incrementAndGet();
+            HttpResponse<InputStream> upstreamRes;
+            try {
+                upstreamRes = client.send(upstreamReq, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                u.release();
+                u.failed(maxFailures, ejectMillis);
+                continue;
+            } catch (HttpTimeoutException e) {
+                u.release();
+                u.failed(maxFailures, ejectMillis);
+                error(res, 504, "Gateway Timeout", "Upstream timed out");
+                return;
+            } catch (IOException e) {
+                u.release();
+                u.failed(maxFailures, ejectMillis);
+                error(res, 502, "Bad Gateway", "Upstream error");
+                return;
+            }
+
+            int status = upstreamRes.statusCode();
+            if (status == 502 || status == 503 || status == 504)
+                u.failed(maxFailures, ejectMillis);
+            else
+                u.succeeded();
+
+            res.setStatusCode(status);
+            res.setStatusMessage(reasonPhrase(status));
+            // Repeated lines stay repeated: Set-Cookie values contain commas and cannot be folded
+            for (Map.Entry<String, List<String>> h : upstreamRes.headers().map().entrySet()) {
+                String name = h.getKey();
+                if (name.startsWith(":") || SKIPPED_HEADERS.contains(name.toLowerCase()))
+                    continue;
+                List<String> values = h.getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    if (i == 0)
+                        res.setHeader(name, values.get(i));
+                    else
+                        res.addHeader(name, values.get(i));
+                }
+            }
+            res.setBody(new ReleasingStream(upstreamRes.body(), u));
+            return;
+        }
+        error(res, 503, "Service Unavailable", "No healthy upstream");
+    }
+
+    private Upstream choose() {
+        long now = System.nanoTime();
+        int n = upstreams.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), n);
+        Upstream best = null;
+        for (int i = 0; i < n; i++) {
+            Upstream u = upstreams.get((start + i) % n);
+            if (u.ejectedUntil > now)
+                continue;
+            if (balancing == Balancing.ROUND_ROBIN)
+                return u;
+            if (best == null || u.inFlight.get() < best.inFlight.get())
+                best = u;
+        }
+        return best;
+    }
+
+    private HttpRequest toUpstreamRequest(Upstream u, Request req) {
+        byte[] raw = req.getRawBodyBytes();
+        HttpRequest.BodyPublisher body = raw.length == 0 ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(raw);
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(u.baseUrl + req.getPath()))
+                .timeout(timeout)
+                .method(req.getMethod().name(), body);
+        for (Map.Entry<String, String> h : req.getHeaders().entrySet()) {
+            if (SKIPPED_HEADERS.contains(h.getKey().toLowerCase()))
+                continue;
+            try {
+                b.header(h.getKey(), h.getValue());
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        String host = req.getHeaders().get("Host");
+        if (host != null)
+            b.header("X-Forwarded-Host", host);
+        return b.build();
+    }
+
+    // For tests: requests currently counted against the upstream at this index
+    int inFlight(int upstream) {
+        return upstreams.get(upstream).inFlight.get();
+    }
+
+    private static void error(Response res, int status, String message, String body) {
+        res.setStatusCode(status);
+        res.setStatusMessage(message);
+        res.setBody(body);
+    }
+
+    private static String reasonPhrase(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 204 -> "No Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 500 -> "Internal Server Error";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> status < 400 ? "OK" : "Error";
+        };
+    }
+
+    private static final class Upstream {
+        private final String baseUrl;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long ejectedUntil;
+
+        Upstream(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        void succeeded() {
+            failures.set(0);
+        }
+
+        void failed(int maxFailures, long ejectMillis) {
+            if (failures.incrementAndGet() >= maxFailures) {
+                failures.set(0);
+                ejectedUntil = System.nanoTime() + ejectMillis * 1_000_000L;
+            }
+        }
+    }
+
+    // Keeps the upstream counted as in flight until its body has been fully relayed
+    private static final class ReleasingStream extends FilterInputStream {
+        private final Upstream upstream;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingStream(InputStream in, Upstream upstream) {
+            super(in);
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (released.compareAndSet(false, true))
+                    upstream.release();
+            }
+        }
+    }
+}
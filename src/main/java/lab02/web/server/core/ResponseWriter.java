@@ -0,0 +1,110 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Encodes the status line and headers into one reusable buffer and sends
+ * them together with the body in a single gathering write, instead of one
+ * write (and potentially one TCP segment) per header line. Not thread-safe:
+ * each accept loop owns one instance.
+ */
+final class ResponseWriter {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private ByteBuffer head = ByteBuffer.allocate(1024);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * Writes the response to the channel.
+     *
+     * @return the number of bytes written, status line and headers included
+     */
+    long write(GatheringByteChannel ch, Response res) throws IOException {
+        // Closed on every path: a proxied body releases its upstream connection on close
+        try (InputStream stream = res.getBodyStream()) {
+            ByteBuffer header = encodeHead(res);
+            ByteBuffer body;
+            if (stream != null)
+                body = EMPTY;
+            else if (res.getBodyBuffer() != null)
+                body = res.getBodyBuffer();
+            else
+                body = ByteBuffer.wrap(res.getBody());
+
+            long written = header.remaining() + body.remaining();
+            gather[0] = header;
+            gather[1] = body;
+            try {
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    ch.write(gather);
+                }
+            } finally {
+                gather[1] = null;
+            }
+
+            if (stream != null)
+                written += stream.transferTo(Channels.newOutputStream(ch));
+            return written;
+        }
+    }
+
+    /** Status line, headers and the blank line, ready to be read from the returned buffer. */
+    ByteBuffer encodeHead(Response res) {
+        head.clear();
+        put("HTTP/1.1 ");
+        put(Integer.toString(res.getStatusCode()));
+        put(" ");
+        put(res.getStatusMessage());
+        put("\r\n");
+        for (Map.Entry<String, String> h : res.getHeaders().entrySet()) {
+            put(h.getKey());
+            put(": ");
+            put(h.getValue());
+            put("\r\n");
+        }
+        for (Map.Entry<String, String> h : res.getRepeatedHeaders()) {
+            put(h.getKey());
+            put(": ");
+            put(h.getValue());
+            put("\r\n");
+        }
+        put("\r\n");
+        return head.flip();
+    }
+
+    // Same bytes as String#getBytes(UTF_8), with a copy-free path for the usual all-ASCII text
+    private void put(String s) {
+        if (s == null)
+            s = "";
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) >= 0x80) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                ensure(utf8.length);
+                head.put(utf8);
+                return;
+            }
+        }
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            head.put((byte) s.charAt(i));
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (head.remaining() >= bytes)
+            return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(head.capacity() * 2, head.position() + bytes));
+        head.flip();
+        bigger.put(head);
+        head = bigger;
+    }
+}
@@ -0,0 +1,47 @@
+package lab02.web.server.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wall-clock breakdown of the bootstrap. Each call to {@link #phase(String)}
+ * charges the time elapsed since the previous mark to the named phase, and
+ * {@link #print()} emits a single greppable line so regressions show up in CI
+ * logs.
+ */
+public class StartupReport {
+    private final long origin;
+    private long last;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    public StartupReport() {
+        this.origin = System.nanoTime();
+        this.last = origin;
+    }
+
+    public synchronized void phase(String name) {
+        long now = System.nanoTime();
+        phases.merge(name, now - last, Long::sum);
+        last = now;
+    }
+
+    public synchronized String format() {
+        StringBuilder sb = new StringBuilder("[startup]");
+        for (Map.Entry<String, Long> p : phases.entrySet()) {
+            sb.append(' ').append(p.getKey()).append('=').append(millis(p.getValue()));
+        }
+        sb.append(" total=").append(millis(last - origin));
+        sb.append(" jvm_uptime=").append(ManagementFactory.getRuntimeMXBean().getUptime()).append("ms");
+        return sb.toString();
+    }
+
+    public void print() {
+        System.out.println(format());
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0);
+    }
+}
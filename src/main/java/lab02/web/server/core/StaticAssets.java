@@ -0,0 +1,197 @@
+package lab02.web.server.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Immutable in-memory index of the static files, built once at startup from
+ * either a classpath location ({@code classpath:static}, which also works
+ * inside a packaged jar) or a filesystem directory.
+ *
+ * Every file is also reachable under a fingerprinted URL that embeds a hash
+ * of its content ({@code /app.js} becomes {@code /app.1b2c3d4e5f.js}), which
+ * is safe to cache forever. Files above {@link #OFF_HEAP_THRESHOLD} bytes are
+ * kept in direct buffers so large bundles stay off the Java heap.
+ */
+public final class StaticAssets {
+    public static final String CLASSPATH_PREFIX = "classpath:";
+    static final int OFF_HEAP_THRESHOLD = 64 * 1024;
+
+    private final Map<String, Asset> byPath;
+    private final long totalBytes;
+    private final long offHeapBytes;
+
+    /**
+     * A preloaded file. {@code content} is read-only; use
+     * {@code content().duplicate()} to read it.
+     */
+    public record Asset(String path, String fingerprintedPath, String mime, String etag, ByteBuffer content) {
+    }
+
+    private StaticAssets(Map<String, Asset> byPath, long totalBytes, long offHeapBytes) {
+        this.byPath = Map.copyOf(byPath);
+        this.totalBytes = totalBytes;
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    public static StaticAssets load(String location) {
+        Map<String, byte[]> files = new HashMap<>();
+        try {
+            if (location.startsWith(CLASSPATH_PREFIX))
+                readClasspath(location.substring(CLASSPATH_PREFIX.length()), files);
+            else
+                readDirectory(new File(location), "", files);
+        } catch (IOException e) {
+            System.out.println("[web] static assets not loaded from " + location + ": " + e.getMessage());
+        }
+
+        Map<String, Asset> index = new HashMap<>();
+        long total = 0;
+        long offHeap = 0;
+        for (Map.Entry<String, byte[]> f : files.entrySet()) {
+            String path = f.getKey();
+            byte[] bytes = f.getValue();
+            String hash = hash(bytes);
+            ByteBuffer content;
+            if (bytes.length > OFF_HEAP_THRESHOLD) {
+                content = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+                offHeap += bytes.length;
+            } else {
+                content = ByteBuffer.wrap(bytes);
+            }
+            Asset asset = new Asset(path, fingerprint(path, hash), mime(path), "\"" + hash + "\"",
+                    content.asReadOnlyBuffer());
+            index.put(path, asset);
+            index.put(asset.fingerprintedPath(), asset);
+            total += bytes.length;
+        }
+        return new StaticAssets(index, total, offHeap);
+    }
+
+    /** Looks up a file by its plain or fingerprinted path, e.g. {@code /index.html}. */
+    public Asset get(String path) {
+        return byPath.get(path);
+    }
+
+    /** The fingerprinted URL for a plain path, or the path itself if there is no such file. */
+    public String url(String path) {
+        Asset a = byPath.get(path);
+        return a == null ? path : a.fingerprintedPath();
+    }
+
+    public int size() {
+        return byPath.size() / 2;
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    public long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    private static void readClasspath(String root, Map<String, byte[]> out) throws IOException {
+        String base = root.startsWith("/") ? root.substring(1) : root;
+        if (base.endsWith("/"))
+            base = base.substring(0, base.length() - 1);
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        Enumeration<URL> urls = cl.getResources(base);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("jar".equals(url.getProtocol()))
+                readJar(url, base + "/", out);
+            else if ("file".equals(url.getProtocol()))
+                readDirectory(new File(URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8)), "", out);
+        }
+    }
+
+    private static void readJar(URL url, String prefix, Map<String, byte[]> out) throws IOException {
+        JarURLConnection conn = (JarURLConnection) url.openConnection();
+        conn.setUseCaches(false);
+        try (JarFile jar = conn.getJarFile()) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry e = entries.nextElement();
+                if (e.isDirectory() || !e.getName().startsWith(prefix))
+                    continue;
+                try (InputStream in = jar.getInputStream(e)) {
+                    out.putIfAbsent("/" + e.getName().substring(prefix.length()), in.readAllBytes());
+                }
+            }
+        }
+    }
+
+    private static void readDirectory(File dir, String rel, Map<String, byte[]> out) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            String path = rel + "/" + f.getName();
+            if (f.isDirectory())
+                readDirectory(f, path, out);
+            else if (f.isFile())
+                out.putIfAbsent(path, Files.readAllBytes(f.toPath()));
+        }
+    }
+
+    private static String fingerprint(String path, String hash) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1)
+            return path + "." + hash;
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 5; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String mime(String path) {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".html") || lower.endsWith(".htm"))
+            return "text/html";
+        if (lower.endsWith(".css"))
+            return "text/css";
+        if (lower.endsWith(".js"))
+            return "application/javascript";
+        if (lower.endsWith(".png"))
+            return "image/png";
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg"))
+            return "image/jpeg";
+        if (lower.endsWith(".gif"))
+            return "image/gif";
+        if (lower.endsWith(".svg"))
+            return "image/svg+xml";
+        if (lower.endsWith(".ico"))
+            return "image/x-icon";
+        if (lower.endsWith(".mp4"))
+            return "video/mp4";
+        if (lower.endsWith(".json"))
+            return "application/json";
+        return "text/plain";
+    }
+}
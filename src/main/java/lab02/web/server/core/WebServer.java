@@ -4,32 +4,76 @@ import lab02.web.server.http.HttpMethod;
 import lab02.web.server.http.Request;
 import lab02.web.server.http.Response;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.ServerSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.time.Instant;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class WebServer {
-    private int listeningPort;
+    public static final String DEFAULT_STATIC_ROOT = StaticAssets.CLASSPATH_PREFIX + "static";
+    private static final String BATCH_PATH = "/batch";
+    private static final int DEFAULT_BATCH_CONCURRENCY = 8;
+    private static final long DEFAULT_BATCH_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_BATCH_MAX_ITEMS = 64;
+    private static final long IDLE_SWEEP_MILLIS = 250;
+    // One per loop and bulkhead thread; a writer reuses its head buffer and is not thread-safe
+    private static final ThreadLocal<ResponseWriter> WRITERS = ThreadLocal.withInitial(ResponseWriter::new);
+
+    private volatile int listeningPort;
     private String assetsRoot;
+    private volatile StaticAssets assets;
     private final Map<RouteKey, Handler> routes;
+    private final Map<RouteKey, ConcurrencyLimiter> bulkheads;
+    private final List<FilterEntry> filters;
+    private final Map<String, Handler> mounts;
+    private volatile RouteTable chains;
+    private int acceptors = Runtime.getRuntime().availableProcessors();
+    private StartupReport startupReport;
+    private boolean tracing;
+    private boolean requestLogging;
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize;
+    private int backlog;
+    private int readTimeoutMillis = 5000;
+    private final List<Closeable> running = new CopyOnWriteArrayList<>();
 
     public WebServer() {
-        this(8000, "src/main/resources/static");
+        this(8000, DEFAULT_STATIC_ROOT);
     }
 
     public WebServer(int port, String staticPath) {
         this.listeningPort = port;
         this.assetsRoot = staticPath;
         this.routes = new ConcurrentHashMap<>();
+        this.bulkheads = new ConcurrentHashMap<>();
+        this.filters = new ArrayList<>();
+        this.mounts = new HashMap<>();
     }
 
     public WebServer port(int port) {
@@ -37,14 +81,161 @@ public class WebServer {
         return this;
     }
 
+    /**
+     * Where static files are loaded from: {@code classpath:<dir>} (the default,
+     * {@code classpath:static}) or a filesystem directory. Files are read into
+     * memory once, so changes on disk need a restart.
+     */
     public WebServer staticPath(String staticPath) {
         this.assetsRoot = staticPath;
+        this.assets = null;
         return this;
     }
 
-    public void register(HttpMethod method, String path, Handler handler) {
-        String norm = normalizePath(path);
-        routes.put(new RouteKey(method, norm), Objects.requireNonNull(handler));
+    /** The cache-forever, content-fingerprinted URL for a static file path such as {@code /app.js}. */
+    public String assetUrl(String path) {
+        return assets().url(normalizePath(path));
+    }
+
+    /**
+     * Number of accept/serve loops. Each loop gets its own SO_REUSEPORT socket
+     * when the platform supports it; otherwise a single acceptor distributes
+     * connections round-robin across the loops. Startup still fails if another
+     * process already listens on the port.
+     */
+    public WebServer acceptors(int count) {
+        this.acceptors = Math.max(1, count);
+        return this;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /** The listening port; once started with port 0, the one the OS picked. */
+    public int getPort() {
+        return listeningPort;
+    }
+
+    /**
+     * How long a connection may wait before sending its request, and then
+     * between reads while the request arrives. Past it the client gets 408.
+     */
+    public WebServer readTimeout(int millis) {
+        this.readTimeoutMillis = Math.max(1, millis);
+        return this;
+    }
+
+    /**
+     * Logs a line per request and per response. Off by default: every line
+     * goes through the synchronized {@code System.out}, which all loops would
+     * contend on.
+     */
+    public WebServer requestLogging(boolean enabled) {
+        this.requestLogging = enabled;
+        return this;
+    }
+
+    /** TCP_NODELAY on accepted connections; on by default since each response is sent in one write. */
+    public WebServer tcpNoDelay(boolean enabled) {
+        this.tcpNoDelay = enabled;
+        return this;
+    }
+
+    /** SO_SNDBUF for accepted connections in bytes; 0 keeps the OS default. */
+    public WebServer sendBufferSize(int bytes) {
+        this.sendBufferSize = Math.max(0, bytes);
+        return this;
+    }
+
+    /** Pending-connection queue length for the listening sockets; 0 keeps the JDK default. */
+    public WebServer backlog(int backlog) {
+        this.backlog = Math.max(0, backlog);
+        return this;
+    }
+
+    /**
+     * Report that {@link #start()} completes with the route compilation and
+     * socket bind phases and prints once the server is listening.
+     */
+    public WebServer startupReport(StartupReport report) {
+        this.startupReport = report;
+        return this;
+    }
+
+    /**
+     * When enabled, a request without a valid {@code traceparent} header gets a
+     * fresh one, so {@link Request#getTraceId()} is always set and proxied
+     * calls carry it upstream. The header is echoed on the response.
+     */
+    public WebServer tracing(boolean enabled) {
+        this.tracing = enabled;
+        return this;
+    }
+
+    /**
+     * Enables the {@code POST /batch} endpoint, which runs a JSON array of
+     * sub-requests through this server's routes in one round trip. Off unless
+     * one of the {@code batch} methods is called. See {@link BatchHandler} for
+     * the request and response format.
+     */
+    public WebServer batch() {
+        return batch(DEFAULT_BATCH_CONCURRENCY, DEFAULT_BATCH_TIMEOUT_MS);
+    }
+
+    public WebServer batch(int maxConcurrency, long itemTimeoutMillis) {
+        return batch(maxConcurrency, itemTimeoutMillis, DEFAULT_BATCH_MAX_ITEMS);
+    }
+
+    public WebServer batch(int maxConcurrency, long itemTimeoutMillis, int maxItems) {
+        register(HttpMethod.POST, BATCH_PATH,
+                new BatchHandler(this, BATCH_PATH, maxConcurrency, itemTimeoutMillis, maxItems));
+        return this;
+    }
+
+    public synchronized void register(HttpMethod method, String path, Handler handler) {
+        RouteKey key = new RouteKey(method, normalizePath(path));
+        routes.put(key, Objects.requireNonNull(handler));
+        bulkheads.remove(key);
+        chains = null;
+    }
+
+    /**
+     * Registers a route behind its own bulkhead; see {@link ConcurrencyLimiter}.
+     * Requests for it are handled on the bulkhead's threads instead of the
+     * accept loops.
+     */
+    public synchronized void register(HttpMethod method, String path, Handler handler, ConcurrencyLimiter limiter) {
+        RouteKey key = new RouteKey(method, normalizePath(path));
+        routes.put(key, limiter.wrap(Objects.requireNonNull(handler)));
+        bulkheads.put(key, limiter);
+        chains = null;
+    }
+
+    /**
+     * Routes every method for {@code prefix} and any path below it to the
+     * handler, e.g. a {@link ProxyHandler}. Exact routes take precedence, and
+     * the longest matching prefix wins.
+     */
+    public synchronized WebServer mount(String prefix, Handler handler) {
+        mounts.put(normalizePath(prefix), Objects.requireNonNull(handler));
+        chains = null;
+        return this;
+    }
+
+    /**
+     * Wraps every route whose path matches {@code pattern} with the given filter.
+     * Filters run in registration order, the first one registered being the
+     * outermost.
+     */
+    public synchronized WebServer filter(String pattern, Filter filter) {
+        filters.add(new FilterEntry(new PathPattern(pattern), Objects.requireNonNull(filter)));
+        chains = null;
+        return this;
+    }
+
+    public WebServer filter(Filter filter) {
+        return filter("/**", filter);
     }
 
     // Convenience methods for compatibility
@@ -68,47 +259,27 @@ public class WebServer {
         register(HttpMethod.DELETE, path, handler);
     }
 
-    private boolean exists(String path) {
-        return Files.isRegularFile(Paths.get(path));
-    }
-
-    private byte[] readBytes(String path) {
-        try {
-            return Files.readAllBytes(Paths.get(path));
-        } catch (IOException e) {
-            return new byte[0];
-        }
-    }
-
-    private String mime(String path) {
-        String lower = path.toLowerCase();
-        if (lower.endsWith(".html") || lower.endsWith(".htm"))
-            return "text/html";
-        if (lower.endsWith(".css"))
-            return "text/css";
-        if (lower.endsWith(".js"))
-            return "application/javascript";
-        if (lower.endsWith(".png"))
-            return "image/png";
-        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg"))
-            return "image/jpeg";
-        if (lower.endsWith(".gif"))
-            return "image/gif";
-        if (lower.endsWith(".svg"))
-            return "image/svg+xml";
-        if (lower.endsWith(".ico"))
-            return "image/x-icon";
-        if (lower.endsWith(".mp4"))
-            return "video/mp4";
-        if (lower.endsWith(".json"))
-            return "application/json";
-        return "text/plain";
-    }
-
     public Response handleRequest(Request request) {
         Response response = new Response();
+        if (tracing) {
+            if (request.getTraceId() == null) {
+                request.getHeaders().keySet().removeIf(k -> k.equalsIgnoreCase("traceparent"));
+                request.getHeaders().put("traceparent", Request.newTraceParent());
+            }
+            response.setHeader("traceparent", request.getTraceParent());
+        }
         String cleanPath = normalizePath(extractPathOnly(request.getPath()));
-        Handler handler = routes.get(new RouteKey(request.getMethod(), cleanPath));
+
+        HttpEvents.RouteEvent route = new HttpEvents.RouteEvent();
+        route.begin();
+        Handler handler = chains().lookup(request.getMethod(), cleanPath);
+        if (route.shouldCommit()) {
+            route.method = request.getMethod().name();
+            route.path = cleanPath;
+            route.matched = handler != null;
+            route.traceId = request.getTraceId();
+            route.commit();
+        }
 
         if (handler != null) {
             try {
@@ -124,20 +295,12 @@ public class WebServer {
             return response;
         }
 
-        String staticCandidate = toStaticPath(cleanPath);
-        if (exists(staticCandidate)) {
-            response.setStatusCode(200);
-            response.setHeader("Content-Type", mime(staticCandidate));
-            response.setBody(readBytes(staticCandidate));
-            return response;
-        }
-
+        StaticAssets.Asset asset = assets().get(cleanPath.equals("/") ? "/index.html" : cleanPath);
         // Fallback to /index.html if available
-        String indexCandidate = this.assetsRoot + "/index.html";
-        if (exists(indexCandidate)) {
-            response.setStatusCode(200);
-            response.setHeader("Content-Type", mime(indexCandidate));
-            response.setBody(readBytes(indexCandidate));
+        if (asset == null)
+            asset = assets().get("/index.html");
+        if (asset != null) {
+            serveAsset(request, response, asset, cleanPath.equals(asset.fingerprintedPath()));
             return response;
         }
 
@@ -147,36 +310,348 @@ public class WebServer {
         return response;
     }
 
-    public void writeResponse(OutputStream output, Response res) throws IOException {
-        output.write(("HTTP/1.1 " + res.getStatusCode() + " " + res.getStatusMessage() + "\r\n").getBytes());
-        for (Map.Entry<String, String> h : res.getHeaders().entrySet()) {
-            output.write((h.getKey() + ": " + h.getValue() + "\r\n").getBytes());
+    private void serveAsset(Request request, Response response, StaticAssets.Asset asset, boolean fingerprinted) {
+        response.setHeader("Content-Type", asset.mime());
+        response.setHeader("ETag", asset.etag());
+        // A fingerprinted URL changes whenever the content does, so it never needs revalidation
+        response.setHeader("Cache-Control", fingerprinted ? "public, max-age=31536000, immutable" : "no-cache");
+        if (asset.etag().equals(request.getHeader("If-None-Match"))) {
+            response.setStatusCode(304);
+            response.setStatusMessage("Not Modified");
+            return;
+        }
+        response.setStatusCode(200);
+        response.setBody(asset.content().duplicate());
+    }
+
+    private StaticAssets assets() {
+        StaticAssets loaded = assets;
+        return loaded != null ? loaded : loadAssets();
+    }
+
+    private synchronized StaticAssets loadAssets() {
+        if (assets == null)
+            assets = StaticAssets.load(assetsRoot);
+        return assets;
+    }
+
+    private RouteTable chains() {
+        RouteTable compiled = chains;
+        return compiled != null ? compiled : compileChains();
+    }
+
+    // Folds the matching filters into one handler per route, so dispatch is a single map lookup
+    private synchronized RouteTable compileChains() {
+        if (chains != null)
+            return chains;
+        Map<RouteKey, Handler> exact = new HashMap<>();
+        for (Map.Entry<RouteKey, Handler> route : routes.entrySet()) {
+            exact.put(route.getKey(), withFilters(route.getKey().path(), route.getValue()));
+        }
+        List<Mount> prefixes = new ArrayList<>();
+        for (Map.Entry<String, Handler> mount : mounts.entrySet()) {
+            prefixes.add(new Mount(mount.getKey(), withFilters(mount.getKey(), mount.getValue())));
+        }
+        prefixes.sort((a, b) -> b.prefix().length() - a.prefix().length());
+        chains = new RouteTable(Map.copyOf(exact), Map.copyOf(bulkheads), prefixes.toArray(new Mount[0]));
+        return chains;
+    }
+
+    private Handler withFilters(String path, Handler handler) {
+        Handler h = handler;
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            FilterEntry entry = filters.get(i);
+            if (entry.pattern().matches(path))
+                h = wrap(entry.filter(), h);
         }
-        output.write("\r\n".getBytes());
-        output.write(res.getBody());
+        return h;
+    }
+
+    private static Handler wrap(Filter filter, Handler next) {
+        return (req, res) -> filter.filter(req, res, next);
     }
 
     public void start() {
-        log("INFO", "server_start", "port=" + listeningPort + " static_root=" + assetsRoot);
+        log("INFO", "server_start", "port=" + listeningPort + " static_root=" + assetsRoot + " acceptors=" + acceptors);
+        compileChains();
+        if (startupReport != null)
+            startupReport.phase("route_compile");
+        StaticAssets index = assets();
+        log("INFO", "static_index", "files=" + index.size() + " bytes=" + index.totalBytes() + " off_heap_bytes="
+                + index.offHeapBytes());
+        if (startupReport != null)
+            startupReport.phase("static_index");
 
-        try (ServerSocket server = new ServerSocket(listeningPort)) {
-            while (true) {
-                try (Socket client = server.accept();
-                        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-                        OutputStream out = client.getOutputStream()) {
-
-                    Request req = Request.fromBufferedReader(in);
-                    log("INFO", "http_request", "method=" + req.getMethod() + " path=" + req.getPath());
-                    Response res = handleRequest(req);
-                    writeResponse(out, res);
-                    log("INFO", "http_response", "status=" + res.getStatusCode() + " path=" + req.getPath());
+        List<ServerSocketChannel> sockets = new ArrayList<>();
+        try {
+            if (acceptors > 1 && supportsReusePort()) {
+                // One listening socket per loop; the kernel spreads incoming connections across them
+                int boundPort = claimPort(listeningPort);
+                for (int i = 0; i < acceptors; i++) {
+                    sockets.add(bind(boundPort, true));
+                }
+            } else {
+                sockets.add(bind(listeningPort, false));
+            }
+            listeningPort = ((InetSocketAddress) sockets.get(0).getLocalAddress()).getPort();
+        } catch (IOException e) {
+            closeAll(sockets);
+            bootFailed(e);
+            return;
+        }
+        if (startupReport != null) {
+            startupReport.phase("socket_bind");
+            startupReport.print();
+        }
+        running.addAll(sockets);
+
+        boolean shared = sockets.size() == 1 && acceptors > 1;
+        List<EventLoop> loops = new ArrayList<>();
+        try {
+            for (int i = 0; i < (shared ? acceptors : sockets.size()); i++) {
+                loops.add(new EventLoop(shared ? null : sockets.get(i)));
+            }
+        } catch (IOException e) {
+            stop();
+            bootFailed(e);
+            return;
+        }
+
+        // Training runs (e.g. to dump a CDS archive) serve one warm-up request, then stop
+        if (Boolean.getBoolean("msb.exitAfterStartup")) {
+            startThread("web-training", () -> runLoops(sockets, loops, shared));
+            warmUp(System.getProperty("msb.warmupPath", "/"));
+            stop();
+            log("INFO", "server_stop", "reason=exit_after_startup");
+            return;
+        }
+        runLoops(sockets, loops, shared);
+    }
+
+    private void runLoops(List<ServerSocketChannel> sockets, List<EventLoop> loops, boolean shared) {
+        if (!shared) {
+            log("INFO", "server_listening", (sockets.size() > 1 ? "mode=reuseport" : "mode=single") + " loops="
+                    + loops.size());
+            for (int i = 1; i < loops.size(); i++) {
+                startThread("web-loop-" + i, loops.get(i));
+            }
+            loops.get(0).run();
+            return;
+        }
+
+        // Shared acceptor: hand each accepted connection to one loop, round-robin
+        log("INFO", "server_listening", "mode=shared loops=" + acceptors);
+        for (int i = 0; i < loops.size(); i++) {
+            startThread("web-loop-" + i, loops.get(i));
+        }
+        ServerSocketChannel server = sockets.get(0);
+        int next = 0;
+        try (server) {
+            while (server.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
                 } catch (IOException e) {
-                    log("WARN", "connection_error", "error=" + safe(e.getMessage()));
+                    log("WARN", "accept_error", "error=" + safe(e.getMessage()));
+                    continue;
                 }
+                loops.get(next).handOff(client);
+                next = next + 1 == loops.size() ? 0 : next + 1;
+            }
+        } catch (IOException e) {
+            log("ERROR", "server_accept_failure", "error=" + safe(e.getMessage()));
+        }
+    }
+
+    // A training run must not pass with an archive of a server that never came up
+    private void bootFailed(IOException e) {
+        log("ERROR", "server_boot_failure", "error=" + safe(e.getMessage()));
+        if (Boolean.getBoolean("msb.exitAfterStartup"))
+            throw new IllegalStateException("Server failed to start on port " + listeningPort, e);
+    }
+
+    // Sends one request through the whole read/route/handle/write path so those classes get loaded
+    private void warmUp(String path) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), listeningPort), readTimeoutMillis);
+            s.setSoTimeout(readTimeoutMillis);
+            s.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String status = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII))
+                    .readLine();
+            log("INFO", "warmup", "path=" + path + " status=" + safe(status));
+        } catch (IOException e) {
+            throw new IllegalStateException("Warm-up request to " + path + " failed", e);
+        }
+    }
+
+    /** Closes the listening sockets and stops the loops; connections being served finish first. */
+    public void stop() {
+        for (Closeable c : running) {
+            closeQuietly(c);
+        }
+        running.clear();
+    }
+
+    private void serve(SocketChannel client) {
+        HttpEvents.RequestEvent event = new HttpEvents.RequestEvent();
+        event.begin();
+        Request req = readRequest(client);
+        if (req == null) {
+            closeQuietly(client);
+            return;
+        }
+        ConcurrencyLimiter bulkhead = chains().bulkhead(req.getMethod(), normalizePath(extractPathOnly(req.getPath())));
+        if (bulkhead == null) {
+            respond(client, req, null, event);
+            return;
+        }
+        // Handled on the bulkhead's own threads, so a slow route never holds this loop
+        bulkhead.dispatch(() -> respond(client, req, null, event),
+                () -> respond(client, req, ConcurrencyLimiter.rejection(), event));
+    }
+
+    // The request, or null once the client has been answered with 400/408 or the connection failed
+    private Request readRequest(SocketChannel client) {
+        try {
+            client.socket().setSoTimeout(readTimeoutMillis);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+            if (sendBufferSize > 0)
+                client.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+
+            HttpEvents.ParseEvent parse = new HttpEvents.ParseEvent();
+            parse.begin();
+            // The socket's own stream honours SO_TIMEOUT; one from Channels.newInputStream would block forever
+            InputStream in = new BufferedInputStream(client.socket().getInputStream());
+            Request req;
+            try {
+                req = Request.fromInputStream(in);
+            } catch (SocketTimeoutException e) {
+                log("WARN", "request_timeout", "");
+                WRITERS.get().write(client, requestTimeout());
+                return null;
+            } catch (RuntimeException e) {
+                // Unknown method, malformed request line or an empty probe connection
+                log("WARN", "bad_request", "error=" + safe(String.valueOf(e.getMessage())));
+                WRITERS.get().write(client, badRequest());
+                return null;
+            }
+            if (parse.shouldCommit()) {
+                parse.method = req.getMethod().name();
+                parse.path = req.getPath();
+                parse.bodyBytes = req.getRawBodyBytes().length;
+                parse.traceId = req.getTraceId();
+                parse.commit();
             }
+            return req;
         } catch (IOException e) {
-            log("ERROR", "server_boot_failure", "error=" + safe(e.getMessage()));
+            log("WARN", "connection_error", "error=" + safe(e.getMessage()));
+        } catch (RuntimeException e) {
+            log("ERROR", "connection_error", "error=" + safe(String.valueOf(e)));
         }
+        return null;
+    }
+
+    // Handles the request unless a response is given, writes the response and closes the connection
+    private void respond(SocketChannel channel, Request req, Response given, HttpEvents.RequestEvent event) {
+        try (SocketChannel client = channel) {
+            if (requestLogging)
+                log("INFO", "http_request", "method=" + req.getMethod() + " path=" + req.getPath());
+            Response res = given != null ? given : handleRequest(req);
+
+            HttpEvents.WriteEvent write = new HttpEvents.WriteEvent();
+            write.begin();
+            long written = WRITERS.get().write(client, res);
+            if (write.shouldCommit()) {
+                write.path = req.getPath();
+                write.status = res.getStatusCode();
+                write.bytes = written;
+                write.traceId = req.getTraceId();
+                write.commit();
+            }
+            if (requestLogging)
+                log("INFO", "http_response", "status=" + res.getStatusCode() + " path=" + req.getPath());
+
+            if (event.shouldCommit()) {
+                event.method = req.getMethod().name();
+                event.path = req.getPath();
+                event.status = res.getStatusCode();
+                event.responseBytes = written;
+                event.traceId = req.getTraceId();
+                event.commit();
+            }
+        } catch (IOException e) {
+            log("WARN", "connection_error", "error=" + safe(e.getMessage()));
+        } catch (RuntimeException e) {
+            log("ERROR", "connection_error", "error=" + safe(String.valueOf(e)));
+        }
+    }
+
+    private static Response badRequest() {
+        Response res = new Response();
+        res.setStatusCode(400);
+        res.setStatusMessage("Bad Request");
+        res.setBody("Malformed or unsupported request");
+        return res;
+    }
+
+    private static Response requestTimeout() {
+        Response res = new Response();
+        res.setStatusCode(408);
+        res.setStatusMessage("Request Timeout");
+        res.setBody("Request not received in time");
+        return res;
+    }
+
+    private ServerSocketChannel bind(int port, boolean reusePort) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            if (reusePort)
+                server.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            server.bind(new InetSocketAddress(port), backlog);
+            return server;
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    /*
+     * SO_REUSEPORT would let a second copy of the server bind the same port and
+     * silently split the traffic. A plain bind first fails with "Address already
+     * in use" if anything is listening, as it would without SO_REUSEPORT.
+     * Two servers starting at the very same moment can still both pass this check.
+     */
+    private static int claimPort(int port) throws IOException {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            probe.bind(new InetSocketAddress(port));
+            return ((InetSocketAddress) probe.getLocalAddress()).getPort();
+        }
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void closeAll(List<ServerSocketChannel> sockets) {
+        for (ServerSocketChannel s : sockets) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
     }
 
     private void log(String level, String event, String details) {
@@ -205,13 +680,158 @@ public class WebServer {
         return out;
     }
 
-    private String toStaticPath(String cleanPath) {
-        String p = cleanPath;
-        if (p.equals("/"))
-            p = "/index.html";
-        return this.assetsRoot + p;
+    private record RouteKey(HttpMethod method, String path) {
     }
 
-    private record RouteKey(HttpMethod method, String path) {
+    private record FilterEntry(PathPattern pattern, Filter filter) {
+    }
+
+    private record Mount(String prefix, Handler handler) {
+        boolean matches(String path) {
+            return prefix.equals("/") || path.equals(prefix) || path.startsWith(prefix + "/");
+        }
+    }
+
+    private record RouteTable(Map<RouteKey, Handler> exact, Map<RouteKey, ConcurrencyLimiter> bulkheads,
+            Mount[] prefixes) {
+        ConcurrencyLimiter bulkhead(HttpMethod method, String path) {
+            return bulkheads.isEmpty() ? null : bulkheads.get(new RouteKey(method, path));
+        }
+
+        Handler lookup(HttpMethod method, String path) {
+            Handler h = exact.get(new RouteKey(method, path));
+            if (h != null || prefixes.length == 0)
+                return h;
+            for (Mount m : prefixes) {
+                if (m.matches(path))
+                    return m.handler();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waits on a selector until connections send something, so an idle client
+     * holds no thread, then reads, handles and writes each ready connection on
+     * this loop's thread. Connections come from the loop's own listening socket
+     * or, in shared mode, from the acceptor. Those idle past the read timeout
+     * get 408.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> handedOff = new ConcurrentLinkedQueue<>();
+        private final List<SocketChannel> ready = new ArrayList<>();
+        private long lastSweep = System.nanoTime();
+
+        EventLoop(ServerSocketChannel server) throws IOException {
+            this.selector = Selector.open();
+            running.add(selector);
+            if (server != null) {
+                server.configureBlocking(false);
+                server.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        }
+
+        void handOff(SocketChannel client) {
+            handedOff.add(client);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select(Math.min(readTimeoutMillis, IDLE_SWEEP_MILLIS));
+                    for (SocketChannel c; (c = handedOff.poll()) != null;)
+                        watch(c);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable()) {
+                            acceptAll((ServerSocketChannel) key.channel());
+                        } else if (key.isReadable()) {
+                            key.cancel();
+                            ready.add((SocketChannel) key.channel());
+                        }
+                    }
+                    if (!ready.isEmpty()) {
+                        // Deregisters the cancelled keys; a channel must be deregistered before it can block again
+                        selector.selectNow();
+                        for (SocketChannel c : ready)
+                            serveReady(c);
+                        ready.clear();
+                    }
+                    expireIdle();
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    log("WARN", "loop_error", "error=" + safe(e.getMessage()));
+                }
+            }
+        }
+
+        private void acceptAll(ServerSocketChannel server) {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    if (server.isOpen())
+                        log("WARN", "accept_error", "error=" + safe(e.getMessage()));
+                    return;
+                }
+                if (client == null)
+                    return;
+                watch(client);
+            }
+        }
+
+        private void watch(SocketChannel client) {
+            try {
+                client.configureBlocking(false);
+                client.register(selector, SelectionKey.OP_READ, System.nanoTime());
+            } catch (IOException e) {
+                closeQuietly(client);
+            }
+        }
+
+        private void serveReady(SocketChannel client) {
+            try {
+                client.configureBlocking(true);
+            } catch (IOException e) {
+                closeQuietly(client);
+                return;
+            }
+            serve(client);
+        }
+
+        private void expireIdle() {
+            long now = System.nanoTime();
+            if (now - lastSweep < IDLE_SWEEP_MILLIS * 1_000_000L)
+                return;
+            lastSweep = now;
+            long timeout = readTimeoutMillis * 1_000_000L;
+            for (SelectionKey key : selector.keys()) {
+                if (!(key.attachment() instanceof Long since) || now - since < timeout)
+                    continue;
+                key.cancel();
+                SocketChannel client = (SocketChannel) key.channel();
+                try (client) {
+                    // Still non-blocking: a client that does not read cannot stall the loop here
+                    client.write(WRITERS.get().encodeHead(requestTimeout()));
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
     }
 }
@@ -2,15 +2,19 @@ package lab02.web.server.http;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class Request {
+    private static final int MAX_HEAD_BYTES = 64 * 1024;
 
     private final HttpMethod verb;
     private final String uri;
@@ -18,15 +22,23 @@ public class Request {
     private final HashMap<String, String> query;
     private final HashMap<String, String> hdrs;
     private final HashMap<String, ?> data;
+    private final String rawData;
+    private byte[] rawBytes;
 
     public Request(HttpMethod method, String path, String version, HashMap<String, String> queryParams,
             HashMap<String, String> headers, HashMap<String, ?> body) {
+        this(method, path, version, queryParams, headers, body, "");
+    }
+
+    public Request(HttpMethod method, String path, String version, HashMap<String, String> queryParams,
+            HashMap<String, String> headers, HashMap<String, ?> body, String rawBody) {
         this.verb = method;
         this.uri = path;
         this.httpVer = version;
-        this.query = queryParams;
-        this.hdrs = headers;
-        this.data = body;
+        this.query = queryParams == null ? new HashMap<>() : queryParams;
+        this.hdrs = headers == null ? new HashMap<>() : headers;
+        this.data = body == null ? new HashMap<>() : body;
+        this.rawData = rawBody == null ? "" : rawBody;
     }
 
     public HttpMethod getMethod() {
@@ -53,6 +65,83 @@ public class Request {
         return data;
     }
 
+    /** Header value by name, ignoring case. */
+    public String getHeader(String name) {
+        String v = hdrs.get(name);
+        if (v != null)
+            return v;
+        for (Map.Entry<String, String> h : hdrs.entrySet()) {
+            if (h.getKey().equalsIgnoreCase(name))
+                return h.getValue();
+        }
+        return null;
+    }
+
+    /** The W3C {@code traceparent} header, or null when absent or malformed. */
+    public String getTraceParent() {
+        String tp = getHeader("traceparent");
+        return isValidTraceParent(tp) ? tp : null;
+    }
+
+    /** The 32 hex digit trace id from {@code traceparent}, or null. */
+    public String getTraceId() {
+        String tp = getTraceParent();
+        return tp == null ? null : tp.substring(3, 35);
+    }
+
+    /** The 16 hex digit parent span id from {@code traceparent}, or null. */
+    public String getParentSpanId() {
+        String tp = getTraceParent();
+        return tp == null ? null : tp.substring(36, 52);
+    }
+
+    /** A new sampled {@code traceparent} value with random trace and span ids. */
+    public static String newTraceParent() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        String traceId = hex(rnd.nextLong(), 16) + hex(rnd.nextLong() | 1, 16);
+        return "00-" + traceId + "-" + hex(rnd.nextLong() | 1, 16) + "-01";
+    }
+
+    // version "00": 00-<32 hex trace id>-<16 hex span id>-<2 hex flags>, ids not all zero
+    private static boolean isValidTraceParent(String tp) {
+        if (tp == null || tp.length() < 55 || tp.charAt(2) != '-' || tp.charAt(35) != '-' || tp.charAt(52) != '-')
+            return false;
+        if (tp.startsWith("ff") || (tp.startsWith("00") && tp.length() != 55))
+            return false;
+        // Later versions may append fields, each introduced by a dash
+        if (tp.length() > 55 && tp.charAt(55) != '-')
+            return false;
+        boolean traceZero = true;
+        boolean spanZero = true;
+        for (int i = 0; i < 55; i++) {
+            if (i == 2 || i == 35 || i == 52)
+                continue;
+            char c = tp.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')))
+                return false;
+            if (c != '0' && i > 2 && i < 35)
+                traceZero = false;
+            if (c != '0' && i > 35 && i < 52)
+                spanZero = false;
+        }
+        return !traceZero && !spanZero;
+    }
+
+    private static String hex(long v, int digits) {
+        String h = Long.toHexString(v);
+        return "0".repeat(digits - h.length()) + h;
+    }
+
+    /** The body exactly as received, for payloads that are not a JSON object. */
+    public String getRawBody() {
+        return rawData;
+    }
+
+    /** The body bytes as received; the UTF-8 encoding of the raw body when built from text. */
+    public byte[] getRawBodyBytes() {
+        return rawBytes != null ? rawBytes : rawData.getBytes(StandardCharsets.UTF_8);
+    }
+
     public static HashMap<String, String> parseRequestLine(String raw) {
         HashMap<String, String> out = new HashMap<>();
         int firstSpace = raw.indexOf(' ');
@@ -156,7 +245,8 @@ public class Request {
                 start.get("version"),
                 params,
                 headers,
-                body);
+                body,
+                rawBody);
     }
 
     public static Request fromBufferedReader(BufferedReader in) throws IOException {
@@ -194,6 +284,55 @@ public class Request {
         return Request.fromString(head.toString());
     }
 
+    /**
+     * Reads one request from the stream: the request line and headers as
+     * ISO-8859-1 lines, then exactly {@code Content-Length} bytes of body,
+     * decoded as UTF-8.
+     */
+    public static Request fromInputStream(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        String line = readLine(in, head.length());
+        if (line == null)
+            line = "";
+        head.append(line).append("\r\n");
+
+        int contentLength = 0;
+        while ((line = readLine(in, head.length())) != null && !line.isEmpty()) {
+            head.append(line).append("\r\n");
+            if (line.regionMatches(true, 0, "content-length:", 0, 15)) {
+                try {
+                    contentLength = Math.max(0, Integer.parseInt(line.substring(15).trim()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        head.append("\r\n");
+
+        byte[] body = contentLength > 0 ? in.readNBytes(contentLength) : new byte[0];
+        head.append(new String(body, StandardCharsets.UTF_8));
+        Request req = Request.fromString(head.toString());
+        req.rawBytes = body;
+        return req;
+    }
+
+    // One line without its CRLF, or null at end of stream
+    private static String readLine(InputStream in, int headSoFar) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int end = sb.length();
+                if (end > 0 && sb.charAt(end - 1) == '\r')
+                    sb.setLength(end - 1);
+                return sb.toString();
+            }
+            if (headSoFar + sb.length() >= MAX_HEAD_BYTES)
+                throw new IllegalArgumentException("Request head too large");
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
     public String toString() {
         String nl = System.lineSeparator();
         return new StringBuilder()
@@ -1,12 +1,21 @@
 package lab02.web.server.http;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Response {
     private int code;
     private String message;
     private HashMap<String, String> headers;
+    private List<Map.Entry<String, String>> repeated;
     private byte[] payload;
+    private InputStream stream;
+    private ByteBuffer buffer;
 
     public Response() {
         this.code = 200;
@@ -27,10 +36,30 @@ public class Response {
         return headers;
     }
 
+    /** Extra lines for header names that were added more than once, in the order added. */
+    public List<Map.Entry<String, String>> getRepeatedHeaders() {
+        return repeated == null ? List.of() : repeated;
+    }
+
     public byte[] getBody() {
+        if (buffer != null) {
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            return copy;
+        }
         return payload;
     }
 
+    /** Body held in a (possibly direct) buffer, or null when it is a byte array or a stream. */
+    public ByteBuffer getBodyBuffer() {
+        return buffer == null ? null : buffer.duplicate();
+    }
+
+    /** Body to be copied to the client as it is read, or null when the body is in memory. */
+    public InputStream getBodyStream() {
+        return stream;
+    }
+
     public void setStatusCode(int statusCode) {
         this.code = statusCode;
     }
@@ -47,15 +76,50 @@ public class Response {
         headers.put(name, value);
     }
 
+    /**
+     * Adds a header line without replacing an existing one of the same name,
+     * for headers such as {@code Set-Cookie} that must not be folded into one
+     * comma-separated value.
+     */
+    public void addHeader(String name, String value) {
+        if (!headers.containsKey(name)) {
+            headers.put(name, value);
+            return;
+        }
+        if (repeated == null)
+            repeated = new ArrayList<>();
+        repeated.add(Map.entry(name, value));
+    }
+
     public void removeHeader(String name) {
         headers.remove(name);
+        if (repeated != null)
+            repeated.removeIf(h -> h.getKey().equals(name));
     }
 
     public void setBody(String body) {
-        this.payload = body == null ? new byte[0] : body.getBytes();
+        this.payload = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        this.stream = null;
+        this.buffer = null;
     }
 
     public void setBody(byte[] body) {
         this.payload = body == null ? new byte[0] : body;
+        this.stream = null;
+        this.buffer = null;
+    }
+
+    /** Streams the body instead of buffering it; the writer closes the stream. */
+    public void setBody(InputStream body) {
+        this.payload = new byte[0];
+        this.stream = body;
+        this.buffer = null;
+    }
+
+    /** Sends the buffer's remaining bytes without copying them into the heap first. */
+    public void setBody(ByteBuffer body) {
+        this.payload = new byte[0];
+        this.stream = null;
+        this.buffer = body;
     }
 }
@@ -0,0 +1,121 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BatchHandlerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static Response batch(WebServer ws, String body) {
+        return ws.handleRequest(Request.fromString("POST /batch HTTP/1.1\r\nContent-Type: application/json\r\n\r\n"
+                + body));
+    }
+
+    @Test
+    public void queryObjectIsMergedWithThePathQuery() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent").batch();
+        ws.get("/echo", (req, res) -> res.setBody(req.getQueryParams().get("a") + "," + req.getQueryParams().get("b")));
+
+        Response res = batch(ws, "[{\"path\": \"/echo?a=1\", \"query\": {\"b\": \"x y\"}},"
+                + " {\"path\": \"/echo?a=1&b=2\", \"query\": {\"b\": \"3\"}}]");
+
+        assertEquals(200, res.getStatusCode());
+        JsonNode items = MAPPER.readTree(res.getBody());
+        assertEquals("1,x y", items.get(0).get("body").asText());
+        assertEquals("1,3", items.get(1).get("body").asText());
+    }
+
+    @Test
+    public void invalidItemsAreReportedPerItem() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent").batch();
+        ws.get("/ok", (req, res) -> res.setBody("ok"));
+
+        Response res = batch(ws, "[{\"path\": \"/ok\"}, {\"path\": \"/batch\"}, {\"path\": \"no-slash\"}]");
+
+        JsonNode items = MAPPER.readTree(res.getBody());
+        assertEquals(200, items.get(0).get("status").asInt());
+        assertEquals(400, items.get(1).get("status").asInt());
+        assertEquals(400, items.get(2).get("status").asInt());
+    }
+
+    @Test
+    public void batchIsOffUnlessEnabled() {
+        WebServer ws = new WebServer(0, "/nonexistent");
+        ws.get("/ok", (req, res) -> res.setBody("ok"));
+        assertEquals(404, batch(ws, "[{\"path\": \"/ok\"}]").getStatusCode());
+    }
+
+    @Test
+    public void nonAsciiBatchBodyIsReadByByteLength() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent").batch();
+        ws.get("/hello", (req, res) -> {
+            res.setHeader("Content-Type", "text/plain; charset=utf-8");
+            res.setBody("Hola, " + req.getQueryParams().get("name"));
+        });
+        TestServers.start(ws);
+        try {
+            byte[] body = "[{\"path\": \"/hello\", \"query\": {\"name\": \"Jos\u00e9 \u00d1o\u00f1o\"}}]"
+                    .getBytes(StandardCharsets.UTF_8);
+            String head = "POST /batch HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+                    + "\r\n\r\n";
+            ByteArrayOutputStream req = new ByteArrayOutputStream();
+            req.write(head.getBytes(StandardCharsets.US_ASCII));
+            req.write(body);
+
+            String res = new String(TestServers.exchange(ws.getPort(), req.toByteArray(), 2000), StandardCharsets.UTF_8);
+            assertTrue(res.startsWith("HTTP/1.1 200"), res);
+            JsonNode items = MAPPER.readTree(TestServers.body(res));
+            assertEquals("Hola, Jos\u00e9 \u00d1o\u00f1o", items.get(0).get("body").asText());
+        } finally {
+            ws.stop();
+        }
+    }
+
+    @Test
+    public void batchAboveMaxItemsIsRejected() {
+        WebServer ws = new WebServer(0, "/nonexistent").batch(2, 1000, 2);
+        ws.get("/ok", (req, res) -> res.setBody("ok"));
+
+        assertEquals(200, batch(ws, "[{\"path\": \"/ok\"}, {\"path\": \"/ok\"}]").getStatusCode());
+        Response res = batch(ws, "[{\"path\": \"/ok\"}, {\"path\": \"/ok\"}, {\"path\": \"/ok\"}]");
+        assertEquals(400, res.getStatusCode());
+        assertTrue(new String(res.getBody()).contains("2"));
+    }
+
+    @Test
+    public void timeoutIsMeasuredFromWhenEachItemStarts() throws Exception {
+        // One worker: the second item waits ~150ms, then runs ~150ms, ending past 250ms from the batch start
+        WebServer ws = new WebServer(0, "/nonexistent").batch(1, 250, 8);
+        ws.get("/slow", (req, res) -> {
+            Thread.sleep(150);
+            res.setBody("done");
+        });
+
+        Response res = batch(ws, "[{\"path\": \"/slow\"}, {\"path\": \"/slow\"}]");
+
+        JsonNode items = MAPPER.readTree(res.getBody());
+        assertEquals(200, items.get(0).get("status").asInt());
+        assertEquals(200, items.get(1).get("status").asInt());
+    }
+
+    @Test
+    public void itemRunningPastItsTimeoutIs504() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent").batch(2, 50, 8);
+        ws.get("/slow", (req, res) -> Thread.sleep(2000));
+
+        Response res = batch(ws, "[{\"path\": \"/slow\"}]");
+
+        assertEquals(504, MAPPER.readTree(res.getBody()).get(0).get("status").asInt());
+    }
+}
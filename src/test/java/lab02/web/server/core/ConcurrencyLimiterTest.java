@@ -0,0 +1,264 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import lab02.web.server.http.HttpMethod;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimiterTest {
+
+    private static Response call(Handler h) throws Exception {
+        Response res = new Response();
+        h.handle(new Request(HttpMethod.GET, "/", "HTTP/1.1", null, null, null), res);
+        return res;
+    }
+
+    private static Thread callAsync(Handler h, Response[] out, int i) {
+        Thread t = new Thread(() -> {
+            try {
+                out[i] = call(h);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitQueued(Thread t) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (t.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline)
+            Thread.sleep(1);
+    }
+
+    @Test
+    public void overflowIsRejectedWith503() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Handler h = new ConcurrencyLimiter(1, 0, 1000).wrap((req, res) -> {
+            entered.countDown();
+            done.await();
+            res.setStatusCode(200);
+        });
+
+        Response[] out = new Response[1];
+        Thread busy = callAsync(h, out, 0);
+        entered.await();
+
+        Response rejected = call(h);
+        assertEquals(503, rejected.getStatusCode());
+        assertEquals("1", rejected.getHeaders().get("Retry-After"));
+
+        done.countDown();
+        busy.join();
+        assertEquals(200, out[0].getStatusCode());
+        assertEquals(200, call(h).getStatusCode());
+    }
+
+    @Test
+    public void queuedRequestRunsWhenASlotFrees() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Handler h = new ConcurrencyLimiter(1, 1, 5000).wrap((req, res) -> {
+            entered.countDown();
+            done.await();
+            res.setStatusCode(200);
+        });
+
+        Response[] out = new Response[2];
+        Thread first = callAsync(h, out, 0);
+        entered.await();
+        Thread queued = callAsync(h, out, 1);
+        awaitQueued(queued);
+
+        // The queue holds one waiter; the next request overflows
+        assertEquals(503, call(h).getStatusCode());
+
+        done.countDown();
+        first.join();
+        queued.join();
+        assertEquals(200, out[0].getStatusCode());
+        assertEquals(200, out[1].getStatusCode());
+    }
+
+    @Test
+    public void queuedRequestGivesUpAfterTheQueueTimeout() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Handler h = new ConcurrencyLimiter(1, 1, 50).wrap((req, res) -> {
+            entered.countDown();
+            done.await();
+        });
+
+        Thread busy = callAsync(h, new Response[1], 0);
+        entered.await();
+        long start = System.nanoTime();
+        assertEquals(503, call(h).getStatusCode());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        done.countDown();
+        busy.join();
+    }
+
+    @Test
+    public void concurrentFailuresCutTheLimitOnce() throws Exception {
+        int n = 8;
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(n, 0, 1000).adaptive(2.0);
+        CountDownLatch entered = new CountDownLatch(n);
+        CountDownLatch done = new CountDownLatch(1);
+        Handler h = limiter.wrap((req, res) -> {
+            entered.countDown();
+            done.await();
+            res.setStatusCode(500);
+        });
+
+        Response[] out = new Response[n];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            threads.add(callAsync(h, out, i));
+        entered.await();
+        done.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        // All eight were in flight together: one cut (8 * 0.9), not eight (8 * 0.9^8)
+        assertEquals(7, limiter.limit());
+    }
+
+    @Test
+    public void sequentialFailuresKeepCutting() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 0, 1000).adaptive(2.0);
+        // Both handlers sleep so the latency averages track a steady 1ms rather
+        // than sub-microsecond noise that reads as a spike once recovery starts
+        Handler h = limiter.wrap((req, res) -> {
+            Thread.sleep(1);
+            res.setStatusCode(500);
+        });
+        for (int i = 0; i < 30; i++)
+            call(h);
+        assertEquals(1, limiter.limit());
+
+        Handler ok = limiter.wrap((req, res) -> {
+            Thread.sleep(1);
+            res.setStatusCode(200);
+        });
+        for (int i = 0; i < 100; i++)
+            call(ok);
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    public void uniformlySlowRouteKeepsItsLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 0, 1000).adaptive(2.0);
+        Handler h = limiter.wrap((req, res) -> {
+            Thread.sleep(10);
+            res.setStatusCode(200);
+        });
+        for (int i = 0; i < 20; i++)
+            call(h);
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    public void latencySpikeAboveTheBaselineCutsTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 0, 1000).adaptive(2.0);
+        Handler fast = limiter.wrap((req, res) -> res.setStatusCode(200));
+        Handler slow = limiter.wrap((req, res) -> {
+            Thread.sleep(20);
+            res.setStatusCode(200);
+        });
+        for (int i = 0; i < 50; i++)
+            call(fast);
+        for (int i = 0; i < 3; i++)
+            call(slow);
+        assertTrue(limiter.limit() < 4, "limit=" + limiter.limit());
+    }
+
+    @Test
+    public void dispatchRunsOnTheBulkheadAndRejectsWhenFull() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 5000);
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch ran = new CountDownLatch(2);
+        String[] threads = new String[1];
+        int[] rejected = new int[1];
+
+        Runnable task = () -> {
+            threads[0] = Thread.currentThread().getName();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ran.countDown();
+        };
+        limiter.dispatch(task, () -> rejected[0]++);
+        limiter.dispatch(task, () -> rejected[0]++);
+        // One running, one queued: the third is rejected on the calling thread
+        limiter.dispatch(task, () -> rejected[0]++);
+        assertEquals(1, rejected[0]);
+
+        done.countDown();
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertTrue(threads[0].startsWith("web-bulkhead-"), threads[0]);
+    }
+
+    @Test
+    public void saturatedSlowRouteLeavesOtherRoutesAlone() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent").acceptors(2);
+        ws.get("/hello", (req, res) -> res.setBody("hi"));
+        ws.register(HttpMethod.GET, "/slow", (req, res) -> {
+            Thread.sleep(1500);
+            res.setBody("slow");
+        }, new ConcurrencyLimiter(2, 0, 0));
+        TestServers.start(ws);
+        try {
+            int n = 6;
+            String[] slow = new String[n];
+            List<Thread> callers = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int idx = i;
+                Thread t = new Thread(() -> {
+                    try {
+                        slow[idx] = TestServers.exchange(ws.getPort(), "GET /slow HTTP/1.1\r\n\r\n", 5000);
+                    } catch (Exception e) {
+                        slow[idx] = e.toString();
+                    }
+                });
+                t.start();
+                callers.add(t);
+            }
+            Thread.sleep(200);
+
+            for (int i = 0; i < 20; i++) {
+                long start = System.nanoTime();
+                String res = TestServers.get(ws.getPort(), "/hello");
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(res.startsWith("HTTP/1.1 200"), res);
+                assertTrue(millis < 300, "/hello took " + millis + "ms behind the slow route");
+            }
+
+            for (Thread t : callers)
+                t.join();
+            int ok = 0;
+            int shed = 0;
+            for (String res : slow) {
+                if (res.startsWith("HTTP/1.1 200"))
+                    ok++;
+                else if (res.startsWith("HTTP/1.1 503"))
+                    shed++;
+            }
+            assertEquals(2, ok);
+            assertEquals(n - 2, shed);
+        } finally {
+            ws.stop();
+        }
+    }
+}
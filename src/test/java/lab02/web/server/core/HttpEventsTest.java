@@ -0,0 +1,100 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import lab02.web.server.core.scan.ScanApp;
+import lab02.web.server.http.HttpMethod;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class HttpEventsTest {
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String TRACE_PARENT = "00-" + TRACE_ID + "-00f067aa0ba902b7-01";
+    private static final List<String> EVENTS = List.of("lab02.http.Request", "lab02.http.Parse",
+            "lab02.http.Route", "lab02.http.Dispatch", "lab02.http.Handler", "lab02.http.Write");
+
+    @Test
+    public void recordingReceivesEveryPhaseOfARequest() throws Exception {
+        WebServer ws = TestServers.start(MicroSpringBoot.configure(ScanApp.class, 0, new StartupReport()));
+        Path file = Files.createTempFile("http-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : EVENTS)
+                recording.enable(name);
+            recording.start();
+            String res = TestServers.exchange(ws.getPort(),
+                    "GET /scan/hi HTTP/1.1\r\ntraceparent: " + TRACE_PARENT + "\r\n\r\n", 2000);
+            assertTrue(res.startsWith("HTTP/1.1 200"), res);
+            recording.stop();
+            recording.dump(file);
+
+            Set<String> seen = new HashSet<>();
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                String name = e.getEventType().getName();
+                if (!EVENTS.contains(name))
+                    continue;
+                seen.add(name);
+                assertEquals(TRACE_ID, e.getString("traceId"), name);
+                if (name.equals("lab02.http.Request")) {
+                    assertEquals(200, e.getInt("status"));
+                    assertEquals(res.length(), e.getLong("responseBytes"));
+                }
+            }
+            assertEquals(new HashSet<>(EVENTS), seen);
+        } finally {
+            ws.stop();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void tracingGeneratesATraceParentAndEchoesIt() {
+        WebServer ws = new WebServer(0, "/nonexistent").tracing(true);
+        String[] seen = new String[1];
+        ws.get("/t", (req, res) -> seen[0] = req.getTraceId());
+
+        Response generated = ws.handleRequest(Request.fromString("GET /t HTTP/1.1\r\n\r\n"));
+        String tp = generated.getHeaders().get("traceparent");
+        assertNotNull(tp);
+        assertTrue(tp.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"), tp);
+        assertEquals(tp.substring(3, 35), seen[0]);
+
+        Response echoed = ws.handleRequest(
+                Request.fromString("GET /t HTTP/1.1\r\nTraceparent: " + TRACE_PARENT + "\r\n\r\n"));
+        assertEquals(TRACE_PARENT, echoed.getHeaders().get("traceparent"));
+        assertEquals(TRACE_ID, seen[0]);
+
+        Response replaced = ws.handleRequest(
+                Request.fromString("GET /t HTTP/1.1\r\ntraceparent: garbage\r\n\r\n"));
+        assertNotEquals("garbage", replaced.getHeaders().get("traceparent"));
+        assertNotNull(seen[0]);
+    }
+
+    @Test
+    public void tracingAcceptsRequestsBuiltWithoutHeaders() {
+        WebServer ws = new WebServer(0, "/nonexistent").tracing(true);
+        ws.get("/t", (req, res) -> res.setBody(req.getTraceId()));
+
+        Response res = ws.handleRequest(new Request(HttpMethod.GET, "/t", "HTTP/1.1", null, null, null));
+        assertEquals(200, res.getStatusCode());
+        assertEquals(32, new String(res.getBody()).length());
+
+        Request withMap = new Request(HttpMethod.GET, "/t", "HTTP/1.1", null, new HashMap<>(), null);
+        assertEquals(200, ws.handleRequest(withMap).getStatusCode());
+    }
+}
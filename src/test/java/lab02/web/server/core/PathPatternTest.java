@@ -0,0 +1,52 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class PathPatternTest {
+
+    @Test
+    public void exactPatternMatchesOnlyThatPath() {
+        PathPattern p = new PathPattern("/hello");
+        assertTrue(p.matches("/hello"));
+        assertFalse(p.matches("/hello/x"));
+        assertFalse(p.matches("/hell"));
+    }
+
+    @Test
+    public void singleStarMatchesOneSegmentBelowPrefix() {
+        PathPattern p = new PathPattern("/api/*");
+        assertTrue(p.matches("/api/users"));
+        assertFalse(p.matches("/api"));
+        assertFalse(p.matches("/api/users/1"));
+        assertFalse(p.matches("/apix/users"));
+    }
+
+    @Test
+    public void doubleStarMatchesPrefixAndEverythingBelow() {
+        PathPattern p = new PathPattern("/api/**");
+        assertTrue(p.matches("/api"));
+        assertTrue(p.matches("/api/users"));
+        assertTrue(p.matches("/api/users/1"));
+        assertFalse(p.matches("/apix"));
+    }
+
+    @Test
+    public void catchAllPatterns() {
+        assertTrue(new PathPattern("/**").matches("/anything/at/all"));
+        assertTrue(new PathPattern("*").matches("/"));
+        assertTrue(new PathPattern("").matches("/x"));
+        assertTrue(new PathPattern(null).matches("/x"));
+    }
+
+    @Test
+    public void patternsWithoutLeadingSlashOrWithTrailingSlashAreNormalized() {
+        assertTrue(new PathPattern("hello").matches("/hello"));
+        assertTrue(new PathPattern("api/**").matches("/api/users"));
+        assertTrue(new PathPattern("/hello/").matches("/hello"));
+        assertEquals("/api/*", new PathPattern("api/*").toString());
+    }
+}
@@ -0,0 +1,259 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class ProxyHandlerTest {
+
+    private static WebServer upstream(String name, Handler handler) throws InterruptedException {
+        WebServer ws = new WebServer(0, "/nonexistent").acceptors(2);
+        ws.mount("/", handler != null ? handler : (req, res) -> res.setBody(name));
+        return TestServers.start(ws);
+    }
+
+    private static String url(WebServer ws) {
+        return "http://127.0.0.1:" + ws.getPort();
+    }
+
+    private static Response get(WebServer front, String path) {
+        return front.handleRequest(Request.fromString("GET " + path + " HTTP/1.1\r\n\r\n"));
+    }
+
+    private static String read(Response res) throws IOException {
+        InputStream stream = res.getBodyStream();
+        if (stream == null)
+            return new String(res.getBody(), StandardCharsets.UTF_8);
+        try (stream) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void stopAll(WebServer... servers) {
+        for (WebServer ws : servers)
+            ws.stop();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static Map<String, Integer> spread(WebServer front, int requests) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < requests; i++)
+            counts.merge(read(get(front, "/api/x")), 1, Integer::sum);
+        return counts;
+    }
+
+    @Test
+    public void roundRobinSpreadsRequestsEvenly() throws Exception {
+        WebServer a = upstream("a", null);
+        WebServer b = upstream("b", null);
+        try {
+            WebServer front = new WebServer(0, "/nonexistent").mount("/api", new ProxyHandler(url(a), url(b)));
+            assertEquals(Map.of("a", 3, "b", 3), spread(front, 6));
+        } finally {
+            stopAll(a, b);
+        }
+    }
+
+    @Test
+    public void pathAndQueryAreForwardedUnchanged() throws Exception {
+        WebServer a = upstream("a", (req, res) -> res.setBody(req.getPath()));
+        try {
+            WebServer front = new WebServer(0, "/nonexistent").mount("/api", new ProxyHandler(url(a)));
+            assertEquals("/api/users/1?q=x%20y", read(get(front, "/api/users/1?q=x%20y")));
+        } finally {
+            stopAll(a);
+        }
+    }
+
+    @Test
+    public void leastInFlightAvoidsTheBusyUpstream() throws Exception {
+        WebServer a = upstream("a", null);
+        WebServer b = upstream("b", null);
+        try {
+            ProxyHandler proxy = new ProxyHandler(url(a), url(b)).balancing(ProxyHandler.Balancing.LEAST_IN_FLIGHT);
+            WebServer front = new WebServer(0, "/nonexistent").mount("/api", proxy);
+
+            // Leaves the first response's body unread, so its upstream stays in flight
+            Response held = get(front, "/api/x");
+            int busy = proxy.inFlight(0) == 1 ? 0 : 1;
+            assertEquals(1, proxy.inFlight(busy));
+            String other = busy == 0 ? "b" : "a";
+            assertEquals(Map.of(other, 5), spread(front, 5));
+
+            held.getBodyStream().close();
+            assertEquals(0, proxy.inFlight(busy));
+        } finally {
+            stopAll(a, b);
+        }
+    }
+
+    @Test
+    public void failingUpstreamIsEjectedAndComesBack() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        WebServer a = upstream("a", (req, res) -> {
+            if (failing.get()) {
+                res.setStatusCode(503);
+                res.setStatusMessage("Service Unavailable");
+            }
+            res.setBody("a");
+        });
+        WebServer b = upstream("b", null);
+        try {
+            WebServer front = new WebServer(0, "/nonexistent")
+                    .mount("/api", new ProxyHandler(url(a), url(b)).ejection(2, 300));
+
+            // Round robin: a fails on its two turns and is ejected
+            spread(front, 4);
+            assertEquals(Map.of("b", 6), spread(front, 6));
+
+            failing.set(false);
+            Thread.sleep(400);
+            assertEquals(Map.of("a", 2, "b", 2), spread(front, 4));
+        } finally {
+            stopAll(a, b);
+        }
+    }
+
+    @Test
+    public void refusedConnectionIsRetriedOnTheNextUpstream() throws Exception {
+        WebServer b = upstream("b", null);
+        try {
+            WebServer front = new WebServer(0, "/nonexistent")
+                    .mount("/api", new ProxyHandler("http://127.0.0.1:" + freePort(), url(b)).ejection(100, 1000));
+            for (int i = 0; i < 4; i++) {
+                Response res = get(front, "/api/x");
+                assertEquals(200, res.getStatusCode());
+                assertEquals("b", read(res));
+            }
+        } finally {
+            stopAll(b);
+        }
+    }
+
+    @Test
+    public void allUpstreamsDownIs503() throws Exception {
+        WebServer front = new WebServer(0, "/nonexistent")
+                .mount("/api", new ProxyHandler("http://127.0.0.1:" + freePort()));
+        assertEquals(503, get(front, "/api/x").getStatusCode());
+    }
+
+    @Test
+    public void slowUpstreamIs504() throws Exception {
+        WebServer a = upstream("a", (req, res) -> {
+            Thread.sleep(1000);
+            res.setBody("late");
+        });
+        try {
+            ProxyHandler proxy = new ProxyHandler(url(a)).timeout(Duration.ofMillis(100));
+            WebServer front = new WebServer(0, "/nonexistent").mount("/api", proxy);
+            assertEquals(504, get(front, "/api/x").getStatusCode());
+            assertEquals(0, proxy.inFlight(0));
+        } finally {
+            stopAll(a);
+        }
+    }
+
+    @Test
+    public void bodyIsStreamedAndReleasedOnceWritten() throws Exception {
+        byte[] big = new byte[1 << 20];
+        for (int i = 0; i < big.length; i++)
+            big[i] = (byte) i;
+        WebServer a = upstream("a", (req, res) -> res.setBody(big));
+        ProxyHandler proxy = new ProxyHandler(url(a));
+        WebServer front = TestServers.start(new WebServer(0, "/nonexistent").mount("/api", proxy));
+        try {
+            Response direct = get(front, "/api/big");
+            assertTrue(direct.getBodyStream() != null, "body should be streamed, not buffered");
+            assertEquals(1, proxy.inFlight(0));
+            direct.getBodyStream().close();
+            assertEquals(0, proxy.inFlight(0));
+
+            byte[] raw = TestServers.exchange(front.getPort(), "GET /api/big HTTP/1.1\r\n\r\n".getBytes(), 5000);
+            byte[] body = Arrays.copyOfRange(raw, raw.length - big.length, raw.length);
+            assertArrayEquals(big, body);
+            assertEquals(0, proxy.inFlight(0));
+        } finally {
+            stopAll(a, front);
+        }
+    }
+
+    @Test
+    public void repeatedHeadersAreNotFolded() throws Exception {
+        WebServer a = upstream("a", (req, res) -> {
+            res.addHeader("Set-Cookie", "a=1; Expires=Wed, 21 Oct 2026 07:28:00 GMT");
+            res.addHeader("Set-Cookie", "b=2; Path=/");
+        });
+        WebServer front = TestServers.start(new WebServer(0, "/nonexistent").mount("/api", new ProxyHandler(url(a))));
+        try {
+            String res = TestServers.get(front.getPort(), "/api/x");
+            List<String> cookies = new ArrayList<>();
+            for (String line : res.split("\r\n")) {
+                if (line.toLowerCase().startsWith("set-cookie:"))
+                    cookies.add(line.substring(11).trim());
+            }
+            cookies.sort(null);
+            assertEquals(List.of("a=1; Expires=Wed, 21 Oct 2026 07:28:00 GMT", "b=2; Path=/"), cookies);
+        } finally {
+            stopAll(a, front);
+        }
+    }
+
+    @Test
+    public void binaryRequestBodyIsForwardedByteForByte() throws Exception {
+        WebServer a = upstream("a", (req, res) -> res.setBody(req.getRawBodyBytes()));
+        WebServer front = TestServers.start(new WebServer(0, "/nonexistent").mount("/api", new ProxyHandler(url(a))));
+        try {
+            byte[] payload = new byte[256];
+            for (int i = 0; i < payload.length; i++)
+                payload[i] = (byte) (255 - i);
+            ByteArrayOutputStream req = new ByteArrayOutputStream();
+            req.write(("POST /api/echo HTTP/1.1\r\nContent-Type: application/octet-stream\r\nContent-Length: "
+                    + payload.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            req.write(payload);
+
+            byte[] raw = TestServers.exchange(front.getPort(), req.toByteArray(), 2000);
+            assertArrayEquals(payload, Arrays.copyOfRange(raw, raw.length - payload.length, raw.length));
+        } finally {
+            stopAll(a, front);
+        }
+    }
+
+    @Test
+    public void exactRoutesBeatMountsAndTheLongestPrefixWins() throws Exception {
+        WebServer ws = new WebServer(0, "/nonexistent");
+        ws.mount("/api", (req, res) -> res.setBody("api"));
+        ws.mount("/api/v2", (req, res) -> res.setBody("v2"));
+        ws.get("/api/status", (req, res) -> res.setBody("status"));
+
+        assertEquals("api", read(get(ws, "/api")));
+        assertEquals("api", read(get(ws, "/api/users")));
+        assertEquals("v2", read(get(ws, "/api/v2")));
+        assertEquals("v2", read(get(ws, "/api/v2/users/1")));
+        assertEquals("api", read(get(ws, "/api/v2x")));
+        assertEquals("status", read(get(ws, "/api/status")));
+        assertEquals(404, get(ws, "/apix").getStatusCode());
+    }
+}
@@ -0,0 +1,169 @@
+package lab02.web.server.core;
+
+import lab02.web.server.http.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the old response writing (one OutputStream.write per line, Nagle
+ * on) with {@link ResponseWriter} (one gathering write, TCP_NODELAY) over a
+ * persistent loopback connection. Requests are sent back to back, which is
+ * where a Nagle-delayed tail segment meets the client's delayed ACK.
+ *
+ * <pre>
+ * mvn -q test-compile
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) lab02.web.server.core.ResponseWriteBenchmark [iterations]
+ * </pre>
+ *
+ * where {@code cp.txt} comes from {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ * Not a unit test: surefire does not pick it up.
+ */
+public class ResponseWriteBenchmark {
+    private static final byte[] REQUEST = "GET /bench\n".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Response res = sampleResponse();
+        run("per-line writes, nagle on ", false, iterations, res);
+        run("gathering write, nodelay  ", true, iterations, res);
+    }
+
+    private static void run(String label, boolean gathering, int iterations, Response res) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            int expected = new ResponseWriter().encodeHead(res).remaining() + res.getBody().length;
+            long[] writes = new long[1];
+
+            Thread t = new Thread(() -> serve(server, gathering, iterations + 100, res, writes), "bench-server");
+            t.setDaemon(true);
+            t.start();
+
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ByteBuffer in = ByteBuffer.allocate(expected);
+                for (int i = 0; i < 100; i++) {
+                    roundTrip(client, in);
+                }
+                long[] nanos = new long[iterations];
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    roundTrip(client, in);
+                    nanos[i] = System.nanoTime() - start;
+                }
+                t.join();
+                report(label, nanos, writes[0] / (double) (iterations + 100));
+            }
+        }
+    }
+
+    private static void roundTrip(SocketChannel client, ByteBuffer in) throws IOException {
+        client.write(ByteBuffer.wrap(REQUEST));
+        in.clear();
+        while (in.hasRemaining()) {
+            if (client.read(in) < 0)
+                throw new IOException("server closed the connection");
+        }
+    }
+
+    private static void serve(ServerSocketChannel server, boolean gathering, int requests, Response res,
+            long[] writes) {
+        try (SocketChannel conn = server.accept()) {
+            conn.setOption(StandardSocketOptions.TCP_NODELAY, gathering);
+            CountingChannel counted = new CountingChannel(conn);
+            OutputStream out = Channels.newOutputStream(counted);
+            ResponseWriter writer = new ResponseWriter();
+            ByteBuffer req = ByteBuffer.allocate(REQUEST.length);
+            for (int i = 0; i < requests; i++) {
+                req.clear();
+                while (req.hasRemaining()) {
+                    if (conn.read(req) < 0)
+                        return;
+                }
+                if (gathering)
+                    writer.write(counted, res);
+                else
+                    writePerLine(out, res);
+            }
+            writes[0] = counted.writes;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The original per-line response path: status line, each header, blank line and body as separate writes
+    private static void writePerLine(OutputStream output, Response res) throws IOException {
+        output.write(("HTTP/1.1 " + res.getStatusCode() + " " + res.getStatusMessage() + "\r\n").getBytes());
+        for (Map.Entry<String, String> h : res.getHeaders().entrySet()) {
+            output.write((h.getKey() + ": " + h.getValue() + "\r\n").getBytes());
+        }
+        output.write("\r\n".getBytes());
+        output.write(res.getBody());
+    }
+
+    private static Response sampleResponse() {
+        Response res = new Response();
+        res.setHeader("Content-Type", "application/json");
+        res.setHeader("Cache-Control", "no-cache");
+        res.setHeader("ETag", "\"1b2c3d4e5f\"");
+        byte[] body = new byte[1024];
+        Arrays.fill(body, (byte) 'x');
+        res.setBody(body);
+        return res;
+    }
+
+    private static void report(String label, long[] nanos, double writesPerResponse) {
+        Arrays.sort(nanos);
+        double mean = Arrays.stream(nanos).average().orElse(0) / 1000.0;
+        System.out.printf(Locale.ROOT, "%s writes/response=%.1f mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n",
+                label, writesPerResponse, mean, nanos[nanos.length / 2] / 1000.0,
+                nanos[(int) (nanos.length * 0.99)] / 1000.0, nanos[nanos.length - 1] / 1000.0);
+    }
+
+    private static final class CountingChannel implements GatheringByteChannel {
+        private final SocketChannel delegate;
+        private long writes;
+
+        CountingChannel(SocketChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            writes++;
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            writes++;
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            writes++;
+            return delegate.write(srcs);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class ResponseWriterTest {
+
+    private static String head(ResponseWriter writer, Response res) {
+        ByteBuffer b = writer.encodeHead(res);
+        byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void headIsStatusLineHeadersAndBlankLine() {
+        Response res = new Response();
+        res.setHeader("Content-Type", "text/plain");
+        String head = head(new ResponseWriter(), res);
+        assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(head.contains("Content-Type: text/plain\r\n"));
+        assertTrue(head.endsWith("\r\n\r\n"));
+    }
+
+    @Test
+    public void nonAsciiHeaderValuesAreEncodedAsUtf8() {
+        Response res = new Response();
+        res.setHeader("X-Name", "Jos\u00e9 \u2713");
+        ByteBuffer b = new ResponseWriter().encodeHead(res);
+        byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        String line = "X-Name: Jos\u00e9 \u2713\r\n";
+        assertTrue(new String(bytes, StandardCharsets.UTF_8).contains(line));
+        assertTrue(bytes.length > head(new ResponseWriter(), new Response()).length() + line.length());
+    }
+
+    @Test
+    public void headGrowsBeyondTheInitialBuffer() {
+        ResponseWriter writer = new ResponseWriter();
+        Response res = new Response();
+        String big = "a".repeat(3000);
+        res.setHeader("X-Big", big);
+        res.setHeader("X-Wide", "\u00e9".repeat(1500));
+        String head = head(writer, res);
+        assertTrue(head.contains("X-Big: " + big + "\r\n"));
+        assertTrue(head.contains("X-Wide: " + "\u00e9".repeat(1500) + "\r\n"));
+
+        // The grown buffer is reused for the next, smaller response
+        assertTrue(head(writer, new Response()).startsWith("HTTP/1.1 200 OK\r\n"));
+    }
+}
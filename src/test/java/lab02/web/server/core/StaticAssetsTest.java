@@ -0,0 +1,151 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class StaticAssetsTest {
+
+    private static Path siteWith(String... namesAndContents) throws IOException {
+        Path dir = Files.createTempDirectory("static-assets-test");
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            Path file = dir.resolve(namesAndContents[i]);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, namesAndContents[i + 1]);
+        }
+        return dir;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String text(ByteBuffer content) {
+        ByteBuffer b = content.duplicate();
+        byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void fingerprintGoesBeforeTheExtension() throws IOException {
+        Path dir = siteWith("app.js", "console.log(1);", "css/site.min.css", "body{}", "LICENSE", "MIT");
+        try {
+            StaticAssets assets = StaticAssets.load(dir.toString());
+            assertEquals(3, assets.size());
+
+            StaticAssets.Asset js = assets.get("/app.js");
+            assertTrue(js.fingerprintedPath().matches("/app\\.[0-9a-f]{10}\\.js"), js.fingerprintedPath());
+            assertEquals("application/javascript", js.mime());
+            assertEquals(js, assets.get(js.fingerprintedPath()));
+            assertEquals(js.fingerprintedPath(), assets.url("/app.js"));
+
+            assertTrue(assets.get("/css/site.min.css").fingerprintedPath().matches("/css/site\\.min\\.[0-9a-f]{10}\\.css"));
+            assertTrue(assets.get("/LICENSE").fingerprintedPath().matches("/LICENSE\\.[0-9a-f]{10}"));
+            assertEquals("/missing.js", assets.url("/missing.js"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void fingerprintAndEtagFollowTheContent() throws IOException {
+        Path a = siteWith("app.js", "one");
+        Path b = siteWith("app.js", "two");
+        try {
+            StaticAssets.Asset first = StaticAssets.load(a.toString()).get("/app.js");
+            StaticAssets.Asset again = StaticAssets.load(a.toString()).get("/app.js");
+            StaticAssets.Asset changed = StaticAssets.load(b.toString()).get("/app.js");
+            assertEquals(first.fingerprintedPath(), again.fingerprintedPath());
+            assertEquals(first.etag(), again.etag());
+            assertNotEquals(first.fingerprintedPath(), changed.fingerprintedPath());
+            assertNotEquals(first.etag(), changed.etag());
+        } finally {
+            delete(a);
+            delete(b);
+        }
+    }
+
+    @Test
+    public void largeFilesAreKeptOffHeap() throws IOException {
+        String big = "x".repeat(StaticAssets.OFF_HEAP_THRESHOLD + 1);
+        Path dir = siteWith("small.txt", "hi", "big.txt", big);
+        try {
+            StaticAssets assets = StaticAssets.load(dir.toString());
+            assertTrue(assets.get("/big.txt").content().isDirect());
+            assertTrue(!assets.get("/small.txt").content().isDirect());
+            assertEquals(big.length(), assets.offHeapBytes());
+            assertEquals(big.length() + 2, assets.totalBytes());
+            assertEquals(big, text(assets.get("/big.txt").content()));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void missingDirectoryLoadsNothing() {
+        StaticAssets assets = StaticAssets.load("/nonexistent-static-dir");
+        assertEquals(0, assets.size());
+        assertNull(assets.get("/index.html"));
+    }
+
+    @Test
+    public void matchingEtagAnswers304WithoutABody() throws IOException {
+        Path dir = siteWith("index.html", "<h1>hi</h1>");
+        try {
+            WebServer ws = new WebServer(0, dir.toString());
+            Response first = ws.handleRequest(Request.fromString("GET /index.html HTTP/1.1\r\n\r\n"));
+            assertEquals(200, first.getStatusCode());
+            assertEquals("<h1>hi</h1>", text(first.getBodyBuffer()));
+            String etag = first.getHeaders().get("ETag");
+            assertNotNull(etag);
+
+            Response cached = ws.handleRequest(
+                    Request.fromString("GET /index.html HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n"));
+            assertEquals(304, cached.getStatusCode());
+            assertNull(cached.getBodyBuffer());
+            assertEquals(0, cached.getBody().length);
+
+            Response stale = ws.handleRequest(
+                    Request.fromString("GET /index.html HTTP/1.1\r\nIf-None-Match: \"0000000000\"\r\n\r\n"));
+            assertEquals(200, stale.getStatusCode());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void onlyFingerprintedUrlsAreCachedForever() throws IOException {
+        Path dir = siteWith("app.js", "console.log(1);");
+        try {
+            WebServer ws = new WebServer(0, dir.toString());
+            Response plain = ws.handleRequest(Request.fromString("GET /app.js HTTP/1.1\r\n\r\n"));
+            assertEquals("no-cache", plain.getHeaders().get("Cache-Control"));
+
+            Response fingerprinted = ws.handleRequest(
+                    Request.fromString("GET " + ws.assetUrl("/app.js") + " HTTP/1.1\r\n\r\n"));
+            assertEquals(200, fingerprinted.getStatusCode());
+            assertEquals("public, max-age=31536000, immutable", fingerprinted.getHeaders().get("Cache-Control"));
+            assertEquals(plain.getHeaders().get("ETag"), fingerprinted.getHeaders().get("ETag"));
+        } finally {
+            delete(dir);
+        }
+    }
+}
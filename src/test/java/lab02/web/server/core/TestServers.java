@@ -0,0 +1,56 @@
+package lab02.web.server.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** Starts real servers on ephemeral ports and talks raw HTTP/1.1 to them. */
+final class TestServers {
+
+    private TestServers() {
+    }
+
+    /** Runs {@link WebServer#start()} on a daemon thread and waits until it listens. */
+    static WebServer start(WebServer ws) throws InterruptedException {
+        Thread t = new Thread(ws::start, "test-server");
+        t.setDaemon(true);
+        t.start();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (ws.getPort() == 0) {
+            if (System.nanoTime() > deadline)
+                throw new IllegalStateException("server did not start");
+            Thread.sleep(5);
+        }
+        return ws;
+    }
+
+    /** Sends the raw request and returns the whole response; the server closes after one response. */
+    static String exchange(int port, String request, int timeoutMillis) throws IOException {
+        return new String(exchange(port, request.getBytes(StandardCharsets.UTF_8), timeoutMillis),
+                StandardCharsets.UTF_8);
+    }
+
+    static byte[] exchange(int port, byte[] request, int timeoutMillis) throws IOException {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress("127.0.0.1", port), timeoutMillis);
+            s.setSoTimeout(timeoutMillis);
+            OutputStream out = s.getOutputStream();
+            out.write(request);
+            out.flush();
+            InputStream in = s.getInputStream();
+            return in.readAllBytes();
+        }
+    }
+
+    static String get(int port, String path) throws IOException {
+        return exchange(port, "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n", 2000);
+    }
+
+    static String body(String response) {
+        int split = response.indexOf("\r\n\r\n");
+        return split >= 0 ? response.substring(split + 4) : "";
+    }
+}
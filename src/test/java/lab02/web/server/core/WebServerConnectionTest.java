@@ -0,0 +1,87 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class WebServerConnectionTest {
+
+    private static WebServer helloServer(int acceptors) throws InterruptedException {
+        WebServer ws = new WebServer(0, "/nonexistent").acceptors(acceptors).readTimeout(1000);
+        ws.get("/hello", (req, res) -> res.setBody("hi"));
+        return TestServers.start(ws);
+    }
+
+    private static Socket idle(int port) throws Exception {
+        Socket s = new Socket();
+        s.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+        return s;
+    }
+
+    @Test
+    public void idleConnectionsDoNotHoldTheLoops() throws Exception {
+        WebServer ws = helloServer(2);
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++)
+                idle.add(idle(ws.getPort()));
+            for (int i = 0; i < 10; i++) {
+                long start = System.nanoTime();
+                String res = TestServers.get(ws.getPort(), "/hello");
+                assertTrue(res.startsWith("HTTP/1.1 200"), res);
+                assertTrue(System.nanoTime() - start < 500_000_000L, "request " + i + " waited behind an idle socket");
+            }
+        } finally {
+            for (Socket s : idle)
+                s.close();
+            ws.stop();
+        }
+    }
+
+    @Test
+    public void idleConnectionGets408AfterTheReadTimeout() throws Exception {
+        WebServer ws = helloServer(1);
+        try (Socket s = idle(ws.getPort())) {
+            s.setSoTimeout(3000);
+            InputStream in = s.getInputStream();
+            String res = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(res.startsWith("HTTP/1.1 408"), res);
+        } finally {
+            ws.stop();
+        }
+    }
+
+    @Test
+    public void stalledRequestGets408() throws Exception {
+        WebServer ws = helloServer(1);
+        try (Socket s = idle(ws.getPort())) {
+            s.setSoTimeout(3000);
+            s.getOutputStream().write("GET /hello HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+            String res = new String(s.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(res.startsWith("HTTP/1.1 408"), res);
+            assertEquals("hi", TestServers.body(TestServers.get(ws.getPort(), "/hello")));
+        } finally {
+            ws.stop();
+        }
+    }
+
+    @Test
+    public void malformedRequestGets400AndTheLoopKeepsServing() throws Exception {
+        WebServer ws = helloServer(1);
+        try {
+            String bad = TestServers.exchange(ws.getPort(), "BREW /pot HTTP/1.1\r\n\r\n", 2000);
+            assertTrue(bad.startsWith("HTTP/1.1 400"), bad);
+            assertEquals("hi", TestServers.body(TestServers.get(ws.getPort(), "/hello")));
+        } finally {
+            ws.stop();
+        }
+    }
+}
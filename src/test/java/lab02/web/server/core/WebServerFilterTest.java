@@ -0,0 +1,96 @@
+package lab02.web.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import lab02.web.server.core.scan.ScanApp;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+import org.junit.jupiter.api.Test;
+
+public class WebServerFilterTest {
+
+    private static Response get(WebServer ws, String path) {
+        return ws.handleRequest(Request.fromString("GET " + path + " HTTP/1.1\r\n\r\n"));
+    }
+
+    private static Filter tag(String name) {
+        return (req, res, next) -> {
+            String prev = res.getHeaders().get("X-Filters");
+            res.setHeader("X-Filters", prev == null ? name : prev + "," + name);
+            next.handle(req, res);
+        };
+    }
+
+    @Test
+    public void filtersRunInRegistrationOrderAndCanShortCircuit() {
+        WebServer ws = new WebServer(0, "/nonexistent");
+        ws.get("/api/x", (req, res) -> res.setBody("x"));
+        ws.filter("api/**", (req, res, next) -> {
+            if (req.getQueryParams().containsKey("deny")) {
+                res.setStatusCode(403);
+                return;
+            }
+            next.handle(req, res);
+            res.setHeader("X-Outer", "1");
+        });
+        ws.filter((req, res, next) -> {
+            next.handle(req, res);
+            res.setBody(new String(res.getBody()) + "!");
+        });
+
+        Response ok = get(ws, "/api/x");
+        assertEquals("x!", new String(ok.getBody()));
+        assertEquals("1", ok.getHeaders().get("X-Outer"));
+
+        Response denied = get(ws, "/api/x?deny=1");
+        assertEquals(403, denied.getStatusCode());
+        assertEquals("", new String(denied.getBody()));
+    }
+
+    @Test
+    public void filtersApplyToMountsByPrefix() {
+        WebServer ws = new WebServer(0, "/nonexistent");
+        ws.mount("/api", (req, res) -> res.setBody("mounted " + req.getPath()));
+        ws.get("/other", (req, res) -> res.setBody("other"));
+        ws.filter("/api/**", tag("api"));
+
+        Response mounted = get(ws, "/api/users/1");
+        assertEquals("mounted /api/users/1", new String(mounted.getBody()));
+        assertEquals("api", mounted.getHeaders().get("X-Filters"));
+        assertNull(get(ws, "/other").getHeaders().get("X-Filters"));
+    }
+
+    @Test
+    public void routesAndFiltersAddedAfterCompilationAreApplied() {
+        WebServer ws = new WebServer(0, "/nonexistent");
+        ws.get("/a", (req, res) -> res.setBody("a"));
+        assertEquals("a", new String(get(ws, "/a").getBody()));
+
+        ws.get("/b", (req, res) -> res.setBody("b"));
+        assertEquals("b", new String(get(ws, "/b").getBody()));
+
+        ws.filter(tag("late"));
+        assertEquals("late", get(ws, "/a").getHeaders().get("X-Filters"));
+        assertEquals("late", get(ws, "/b").getHeaders().get("X-Filters"));
+
+        ws.mount("/m", (req, res) -> res.setBody("m"));
+        Response mounted = get(ws, "/m/x");
+        assertEquals("m", new String(mounted.getBody()));
+        assertEquals("late", mounted.getHeaders().get("X-Filters"));
+    }
+
+    @Test
+    public void interceptorsAreDiscoveredAndRunByOrder() {
+        WebServer ws = MicroSpringBoot.configure(ScanApp.class, 0, new StartupReport());
+
+        Response hi = get(ws, "/scan/hi");
+        assertEquals("hi", new String(hi.getBody()));
+        assertEquals("auth,audit", hi.getHeaders().get("X-Filters"));
+
+        Response admin = get(ws, "/scan/admin/x");
+        assertEquals("x", new String(admin.getBody()));
+        assertEquals("auth,audit,admin", admin.getHeaders().get("X-Filters"));
+    }
+}
@@ -0,0 +1,16 @@
+package lab02.web.server.core.scan;
+
+import lab02.web.server.annotations.Interceptor;
+import lab02.web.server.core.Filter;
+import lab02.web.server.core.Handler;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+@Interceptor(value = "scan/admin/**", order = 3)
+public class AdminFilter implements Filter {
+    @Override
+    public void filter(Request req, Response res, Handler next) throws Exception {
+        ScanTrace.append(res, "admin");
+        next.handle(req, res);
+    }
+}
@@ -0,0 +1,17 @@
+package lab02.web.server.core.scan;
+
+import lab02.web.server.annotations.Interceptor;
+import lab02.web.server.core.Filter;
+import lab02.web.server.core.Handler;
+import lab02.web.server.http.Request;
+import lab02.web.server.http.Response;
+
+/** Registered with a higher order than {@link AuthFilter}, so it runs inside it. */
+@Interceptor(value = "/scan/**", order = 2)
+public class AuditFilter implements Filter {
+    @Override
+    public void filter(Request req, Response res, Handler next) throws Exception {
+        ScanTrace.append(res, "audit");
+        next.handle(req, res);
+    }
+}
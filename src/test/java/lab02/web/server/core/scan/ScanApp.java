@@ -0,0 +1,8 @@
+package lab02.web.server.core.scan;
+
+import lab02.web.server.annotations.MicroSpringbootApp;
+
+/** Base package for the component scan in {@code WebServerFilterTest}. */
+@MicroSpringbootApp
+public class ScanApp {
+}
@@ -0,0 +1,17 @@
+package lab02.web.server.core.scan;
+
+import lab02.web.server.annotations.GetMapping;
+import lab02.web.server.annotations.RestController;
+
+@RestController
+public class ScanController {
+    @GetMapping("/scan/hi")
+    public String hi() {
+        return "hi";
+    }
+
+    @GetMapping("/scan/admin/x")
+    public String admin() {
+        return "x";
+    }
+}
@@ -0,0 +1,15 @@
+package lab02.web.server.core.scan;
+
+import lab02.web.server.http.Response;
+
+final class ScanTrace {
+    static final String HEADER = "X-Filters";
+
+    private ScanTrace() {
+    }
+
+    static void append(Response res, String name) {
+        String prev = res.getHeaders().get(HEADER);
+        res.setHeader(HEADER, prev == null ? name : prev + "," + name);
+    }
+}
@@ -0,0 +1,90 @@
+package lab02.web.server.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+public class RequestTraceParentTest {
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String SPAN_ID = "00f067aa0ba902b7";
+    private static final String VALID = "00-" + TRACE_ID + "-" + SPAN_ID + "-01";
+
+    private static Request withHeader(String name, String value) {
+        HashMap<String, String> headers = new HashMap<>();
+        if (value != null)
+            headers.put(name, value);
+        return new Request(HttpMethod.GET, "/", "HTTP/1.1", new HashMap<>(), headers, new HashMap<>());
+    }
+
+    private static String parsed(String value) {
+        return withHeader("traceparent", value).getTraceParent();
+    }
+
+    @Test
+    public void validHeaderExposesTraceAndSpanIds() {
+        Request req = withHeader("traceparent", VALID);
+        assertEquals(VALID, req.getTraceParent());
+        assertEquals(TRACE_ID, req.getTraceId());
+        assertEquals(SPAN_ID, req.getParentSpanId());
+    }
+
+    @Test
+    public void headerNameIsCaseInsensitive() {
+        assertEquals(TRACE_ID, withHeader("Traceparent", VALID).getTraceId());
+        assertEquals(TRACE_ID, withHeader("TRACEPARENT", VALID).getTraceId());
+    }
+
+    @Test
+    public void missingHeaderYieldsNull() {
+        Request req = withHeader("traceparent", null);
+        assertNull(req.getTraceParent());
+        assertNull(req.getTraceId());
+        assertNull(req.getParentSpanId());
+    }
+
+    @Test
+    public void uppercaseHexIsRejected() {
+        assertNull(parsed("00-" + TRACE_ID.toUpperCase() + "-" + SPAN_ID + "-01"));
+        assertNull(parsed("00-" + TRACE_ID + "-" + SPAN_ID.toUpperCase() + "-01"));
+    }
+
+    @Test
+    public void allZeroIdsAreRejected() {
+        assertNull(parsed("00-" + "0".repeat(32) + "-" + SPAN_ID + "-01"));
+        assertNull(parsed("00-" + TRACE_ID + "-" + "0".repeat(16) + "-01"));
+    }
+
+    @Test
+    public void versionFfIsRejected() {
+        assertNull(parsed("ff-" + TRACE_ID + "-" + SPAN_ID + "-01"));
+    }
+
+    @Test
+    public void wrongLengthOrSeparatorsAreRejected() {
+        assertNull(parsed(VALID.substring(0, 54)));
+        assertNull(parsed(VALID + "-00"));
+        assertNull(parsed("00-" + TRACE_ID.substring(1) + "-" + SPAN_ID + "-01"));
+        assertNull(parsed(VALID.replace('-', '_')));
+        assertNull(parsed(""));
+    }
+
+    @Test
+    public void newerVersionsMayCarryExtraFields() {
+        assertNotNull(parsed("01-" + TRACE_ID + "-" + SPAN_ID + "-01-extra"));
+        assertNull(parsed("01-" + TRACE_ID + "-" + SPAN_ID + "-01x"));
+    }
+
+    @Test
+    public void generatedTraceParentsAreValidAndDistinct() {
+        String a = Request.newTraceParent();
+        String b = Request.newTraceParent();
+        assertEquals(a, parsed(a));
+        assertEquals(b, parsed(b));
+        assertNotEquals(a, b);
+    }
+}